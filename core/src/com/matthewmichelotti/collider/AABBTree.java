@@ -0,0 +1,389 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+//Broadphase using a dynamic bounding volume tree for each group, in the style of Box2D.
+//Each leaf holds the bounds of a HitBox swept over [startTime, endTime], enlarged by
+//  a margin so that the leaf only needs to be re-inserted once the HitBox leaves it.
+//  Leaves are inserted next to the sibling that least increases the total perimeter,
+//  and the tree is kept balanced by rotations on the path back up to the root.
+//Query regions are IntBoxes in units of cellWidth/SUBDIVISIONS.
+final class AABBTree implements Broadphase {
+	private final static int SUBDIVISIONS = 16;
+	private final static double MARGIN_FRAC = .5;
+
+	private final Collider collider;
+	private final double cellWidth;
+	private final double unit;
+	private final double margin;
+
+	private final int[] roots = new int[HitBox.NUM_GROUPS];
+
+	//node data, indexed by node id; child1 is -1 for leaves, and parent links free nodes
+	private double[] minX = new double[64], minY = new double[64];
+	private double[] maxX = new double[64], maxY = new double[64];
+	private int[] parent = new int[64], child1 = new int[64], child2 = new int[64];
+	private int[] height = new int[64];
+	private int[] handles = new int[64];
+	private int numNodes = 0;
+	private int freeNode = -1;
+	private int numLeaves = 0;
+
+	//leaf node of each HitBox handle
+	private int[] leafOf = new int[0];
+
+	private final Iter iter = new Iter();
+
+	AABBTree(ColliderOpts opts, Collider collider) {
+		if(opts.cellWidth <= 0.0) throw new IllegalArgumentException();
+		this.collider = collider;
+		this.cellWidth = opts.cellWidth;
+		this.unit = cellWidth/SUBDIVISIONS;
+		this.margin = MARGIN_FRAC*cellWidth;
+		for(int i = 0; i < roots.length; i++) roots[i] = -1;
+	}
+
+	@Override public int getNumEntries() {return numLeaves;}
+	@Override public double getCellWidth() {return cellWidth;}
+	@Override public int getNumRebuilds() {return 0;}
+	@Override public int getLayoutVersion() {return 0;}
+
+	@Override
+	public void log() {
+		int maxHeight = 0;
+		for(int root : roots) {
+			if(root >= 0) maxHeight = Math.max(maxHeight, height[root]);
+		}
+		System.out.println(" tree leaves: " + numLeaves + " (max height " + maxHeight + ")");
+	}
+
+	@Override
+	public void getIndexBounds(HitBox hitBox, IntBox bounds) {
+		bounds.l = Arith.floor(-hitBox.getBoundEdgeComp(Dir.L)/unit);
+		bounds.b = Arith.floor(-hitBox.getBoundEdgeComp(Dir.D)/unit);
+		bounds.r = Arith.max(bounds.l, Arith.ceil(hitBox.getBoundEdgeComp(Dir.R)/unit) - 1);
+		bounds.t = Arith.max(bounds.b, Arith.ceil(hitBox.getBoundEdgeComp(Dir.U)/unit) - 1);
+		bounds.level = 0;
+		bounds.oversize = false;
+	}
+
+	@Override
+	public void getQueryBounds(HitBox hitBox, IntBox bounds) {
+		getIndexBounds(hitBox, bounds);
+	}
+
+	@Override
+	public double getGridPeriod(HitBox hitBox) {
+		double speed = hitBox.maxBoundEdgeVel;
+		if(speed <= 0.0) return Double.POSITIVE_INFINITY;
+		else return cellWidth/speed;
+	}
+
+	//leaves are enlarged by margin, so moving the bounds of a HitBox on by less would
+	//  mostly give ENTER events that do not re-insert the leaf
+	@Override public double getCellWidth(HitBox hitBox) {return margin;}
+
+	@Override
+	public void remove(HitBox hitBox, int group, IntBox oldBox, IntBox newBox) {
+		if(group < 0) return;
+		if(newBox != null) return; //leaf is refit by add if needed
+		int leaf = leafOf[hitBox.handle];
+		if(leaf < 0) throw new RuntimeException();
+		removeLeaf(leaf, group);
+		freeNode(leaf);
+		leafOf[hitBox.handle] = -1;
+		numLeaves--;
+	}
+
+	@Override
+	public void add(HitBox hitBox, int group, IntBox oldBox, IntBox newBox) {
+		if(group < 0) return;
+		int handle = hitBox.handle;
+		double l = -hitBox.getBoundEdgeComp(Dir.L), b = -hitBox.getBoundEdgeComp(Dir.D);
+		double r = hitBox.getBoundEdgeComp(Dir.R), t = hitBox.getBoundEdgeComp(Dir.U);
+		int leaf;
+		if(oldBox != null) {
+			leaf = leafOf[handle];
+			if(leaf < 0) throw new RuntimeException();
+			if(minX[leaf] <= l && minY[leaf] <= b && maxX[leaf] >= r && maxY[leaf] >= t) return;
+			removeLeaf(leaf, group);
+		}
+		else {
+			if(handle >= leafOf.length) {
+				int oldLength = leafOf.length;
+				leafOf = EventStore.copy(leafOf, Math.max(2*oldLength, handle + 1));
+				for(int i = oldLength; i < leafOf.length; i++) leafOf[i] = -1;
+			}
+			if(leafOf[handle] >= 0) throw new RuntimeException();
+			leaf = allocNode();
+			child1[leaf] = -1;
+			child2[leaf] = -1;
+			height[leaf] = 0;
+			handles[leaf] = handle;
+			leafOf[handle] = leaf;
+			numLeaves++;
+		}
+		minX[leaf] = l - margin;
+		minY[leaf] = b - margin;
+		maxX[leaf] = r + margin;
+		maxY[leaf] = t + margin;
+		insertLeaf(leaf, group);
+	}
+
+	@Override
+	public Iterable<HitBox> iterator(IntBox region, int[] groups, int testId) {
+		iter.init(region, groups, testId);
+		return iter;
+	}
+
+	@Override
+	public Iterable<HitBox> oversizeIterator(int[] groups, int testId) {
+		return Collections.emptyList();
+	}
+
+	private void insertLeaf(int leaf, int group) {
+		int root = roots[group];
+		if(root < 0) {
+			roots[group] = leaf;
+			parent[leaf] = -1;
+			return;
+		}
+
+		//find the best sibling
+		int index = root;
+		while(child1[index] >= 0) {
+			int c1 = child1[index], c2 = child2[index];
+			double area = perimeter(index);
+			double combinedArea = unionPerimeter(index, leaf);
+			double cost = 2.0*combinedArea;
+			double inheritanceCost = 2.0*(combinedArea - area);
+			double cost1 = descendCost(c1, leaf) + inheritanceCost;
+			double cost2 = descendCost(c2, leaf) + inheritanceCost;
+			if(cost < cost1 && cost < cost2) break;
+			index = (cost1 < cost2) ? c1 : c2;
+		}
+		int sibling = index;
+
+		//create a new parent for the leaf and sibling
+		int oldParent = parent[sibling];
+		int newParent = allocNode();
+		parent[newParent] = oldParent;
+		handles[newParent] = -1;
+		setUnion(newParent, leaf, sibling);
+		height[newParent] = height[sibling] + 1;
+		if(oldParent >= 0) {
+			if(child1[oldParent] == sibling) child1[oldParent] = newParent;
+			else child2[oldParent] = newParent;
+		}
+		else {
+			roots[group] = newParent;
+		}
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+
+		refitAncestors(parent[leaf], group);
+	}
+
+	private void removeLeaf(int leaf, int group) {
+		if(leaf == roots[group]) {
+			roots[group] = -1;
+			return;
+		}
+		int p = parent[leaf];
+		int grandParent = parent[p];
+		int sibling = (child1[p] == leaf) ? child2[p] : child1[p];
+		if(grandParent >= 0) {
+			if(child1[grandParent] == p) child1[grandParent] = sibling;
+			else child2[grandParent] = sibling;
+			parent[sibling] = grandParent;
+			freeNode(p);
+			refitAncestors(grandParent, group);
+		}
+		else {
+			roots[group] = sibling;
+			parent[sibling] = -1;
+			freeNode(p);
+		}
+	}
+
+	private void refitAncestors(int index, int group) {
+		while(index >= 0) {
+			index = balance(index, group);
+			int c1 = child1[index], c2 = child2[index];
+			height[index] = 1 + Math.max(height[c1], height[c2]);
+			setUnion(index, c1, c2);
+			index = parent[index];
+		}
+	}
+
+	//performs a left or right rotation if node a is imbalanced, returning the new root of the subtree
+	private int balance(int a, int group) {
+		if(child1[a] < 0 || height[a] < 2) return a;
+		int b = child1[a], c = child2[a];
+		int diff = height[c] - height[b];
+		if(diff > 1) return rotate(a, c, b, group, false);
+		if(diff < -1) return rotate(a, b, c, group, true);
+		return a;
+	}
+
+	//raises child up over a, where other is the remaining child of a
+	private int rotate(int a, int up, int other, int group, boolean upIsChild1) {
+		int f = child1[up], g = child2[up];
+		child1[up] = a;
+		parent[up] = parent[a];
+		parent[a] = up;
+		int upParent = parent[up];
+		if(upParent >= 0) {
+			if(child1[upParent] == a) child1[upParent] = up;
+			else child2[upParent] = up;
+		}
+		else {
+			roots[group] = up;
+		}
+		int keep = (height[f] > height[g]) ? f : g;
+		int move = (keep == f) ? g : f;
+		child2[up] = keep;
+		if(upIsChild1) child1[a] = move;
+		else child2[a] = move;
+		parent[move] = a;
+		setUnion(a, other, move);
+		height[a] = 1 + Math.max(height[other], height[move]);
+		setUnion(up, a, keep);
+		height[up] = 1 + Math.max(height[a], height[keep]);
+		return up;
+	}
+
+	private double descendCost(int child, int leaf) {
+		if(child1[child] < 0) return unionPerimeter(child, leaf);
+		return unionPerimeter(child, leaf) - perimeter(child);
+	}
+
+	private double perimeter(int node) {
+		return 2.0*((maxX[node] - minX[node]) + (maxY[node] - minY[node]));
+	}
+
+	private double unionPerimeter(int a, int b) {
+		double w = Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]);
+		double h = Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]);
+		return 2.0*(w + h);
+	}
+
+	private void setUnion(int node, int a, int b) {
+		minX[node] = Math.min(minX[a], minX[b]);
+		minY[node] = Math.min(minY[a], minY[b]);
+		maxX[node] = Math.max(maxX[a], maxX[b]);
+		maxY[node] = Math.max(maxY[a], maxY[b]);
+	}
+
+	private int allocNode() {
+		if(freeNode >= 0) {
+			int node = freeNode;
+			freeNode = parent[node];
+			return node;
+		}
+		if(numNodes == parent.length) {
+			int length = 2*numNodes;
+			minX = EventStore.copy(minX, length);
+			minY = EventStore.copy(minY, length);
+			maxX = EventStore.copy(maxX, length);
+			maxY = EventStore.copy(maxY, length);
+			parent = EventStore.copy(parent, length);
+			child1 = EventStore.copy(child1, length);
+			child2 = EventStore.copy(child2, length);
+			height = EventStore.copy(height, length);
+			handles = EventStore.copy(handles, length);
+		}
+		numNodes++;
+		return numNodes - 1;
+	}
+
+	private void freeNode(int node) {
+		parent[node] = freeNode;
+		freeNode = node;
+	}
+
+	private class Iter implements Iterator<HitBox>, Iterable<HitBox> {
+		private int[] stack = new int[64];
+		private int stackSize;
+		private int[] groups;
+		private int groupIndex;
+		private double l, b, r, t;
+		private HitBox next;
+		private int testId;
+
+		private void init(IntBox region, int[] groups, int testId) {
+			this.groups = groups;
+			this.testId = testId;
+			l = region.l*unit;
+			b = region.b*unit;
+			r = (region.r + 1.0)*unit;
+			t = (region.t + 1.0)*unit;
+			groupIndex = -1;
+			stackSize = 0;
+			searchNext();
+		}
+
+		private void searchNext() {
+			while(true) {
+				while(stackSize > 0) {
+					stackSize--;
+					int node = stack[stackSize];
+					if(minX[node] > r || maxX[node] < l || minY[node] > t || maxY[node] < b) continue;
+					if(child1[node] >= 0) {
+						push(child1[node]);
+						push(child2[node]);
+						continue;
+					}
+					next = collider.getHitBox(handles[node]);
+					if(next.testMark(testId)) return;
+				}
+				groupIndex++;
+				if(groupIndex >= groups.length) {
+					groups = null;
+					next = null;
+					return;
+				}
+				int root = roots[groups[groupIndex]];
+				if(root >= 0) push(root);
+			}
+		}
+
+		private void push(int node) {
+			if(stackSize == stack.length) stack = EventStore.copy(stack, 2*stackSize);
+			stack[stackSize] = node;
+			stackSize++;
+		}
+
+		@Override
+		public HitBox next() {
+			if(next == null) throw new NoSuchElementException();
+			HitBox result = next;
+			searchNext();
+			return result;
+		}
+
+		@Override public Iterator<HitBox> iterator() {return this;}
+		@Override public boolean hasNext() {return next != null;}
+		@Override public void remove() {throw new UnsupportedOperationException();}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+//Finds the HitBoxes that might interact with a HitBox, before the exact times of
+//  collisions/separations are computed.
+//The bounds of a HitBox, swept over [startTime, endTime], are described by an IntBox
+//  from getIndexBounds.  The Collider removes the old bounds of an altered HitBox,
+//  queries the new bounds, and then adds the new bounds.  When both old and new bounds
+//  are given to remove/add, only the difference between them needs to be updated.
+interface Broadphase {
+	void getIndexBounds(HitBox hitBox, IntBox bounds);
+
+	//region to query for the HitBoxes that might interact with a HitBox, which may be
+	//  smaller than its bounds from getIndexBounds if those are enlarged
+	void getQueryBounds(HitBox hitBox, IntBox bounds);
+
+	//time after which the bounds of a moving HitBox should be recomputed,
+	//  since its bounds grow with the time they cover
+	double getGridPeriod(HitBox hitBox);
+
+	//distance between the boundaries that a moving HitBox is moved on at with cellTraversal;
+	//  for grids, the width of the cells that its query bounds are given in
+	double getCellWidth(HitBox hitBox);
+
+	void remove(HitBox hitBox, int group, IntBox oldBox, IntBox newBox);
+	void add(HitBox hitBox, int group, IntBox oldBox, IntBox newBox);
+
+	//HitBoxes in the given groups with bounds intersecting the region,
+	//  excluding those for which testMark(testId) returns false
+	//NOTE: should iterate to completion
+	Iterable<HitBox> iterator(IntBox region, int[] groups, int testId);
+
+	//HitBoxes in the given groups that were not placed by their bounds, which
+	//  must be tested directly, excluding those for which testMark(testId) returns false
+	//NOTE: should iterate to completion
+	Iterable<HitBox> oversizeIterator(int[] groups, int testId);
+
+	int getNumEntries();
+	
+	//current width of level 0 grid cells, or ColliderOpts.cellWidth if there is no grid
+	double getCellWidth();
+	
+	//number of times the grid has been rebuilt with a different cell width
+	int getNumRebuilds();
+
+	//changes whenever HitBoxes may be moved to other cells without being queried,
+	//  such as while the grid changes its cell width
+	int getLayoutVersion();
+
+	//prints statistics for Collider.log
+	void log();
+}
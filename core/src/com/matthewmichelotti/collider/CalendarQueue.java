@@ -0,0 +1,179 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+//calendar queue (R. Brown, 1988): events are hashed by time into buckets of a fixed width,
+//  each bucket being a sorted linked list, and the buckets are visited cyclically.
+//  Insertion and removal are amortized O(1) as long as the bucket width is close
+//  to a few times the average spacing between events, so the width is re-estimated
+//  from the spacing of polled events whenever the number of buckets changes.
+final class CalendarQueue implements EventQueue {
+	private final static int MIN_BUCKETS = 16;
+	private final static double GAP_WEIGHT = 1.0/32;
+
+	private final EventStore store;
+	private int[] heads = newBuckets(MIN_BUCKETS);
+	private int[] tails = newBuckets(MIN_BUCKETS);
+	private double width;
+	private int size = 0;
+
+	//bucket, previous and next event of each queued event, indexed by event id
+	private int[] bucketOf = new int[0];
+	private int[] prev = new int[0];
+	private int[] next = new int[0];
+
+	//virtual bucket number (time/width, not wrapped around) of the earliest queued event,
+	//  or a lower bound of it
+	private long cursor = 0;
+
+	private double avgGap = 0.0;
+	private double lastPollTime = Double.NaN;
+	private int pollsSinceResize = 0;
+
+	CalendarQueue(EventStore store, double initWidth) {
+		if(!(initWidth > 0.0)) throw new IllegalArgumentException();
+		this.store = store;
+		this.width = initWidth;
+	}
+
+	@Override public int size() {return size;}
+
+	@Override
+	public void add(int event) {
+		if(event >= bucketOf.length) {
+			int length = Math.max(2*bucketOf.length, event + 1);
+			bucketOf = EventStore.copy(bucketOf, length);
+			prev = EventStore.copy(prev, length);
+			next = EventStore.copy(next, length);
+		}
+		long vb = virtualBucket(store.time[event]);
+		if(size == 0 || vb < cursor) cursor = vb;
+		insert(event, (int)vb & (heads.length - 1));
+		size++;
+		if(size > 2*heads.length) resize(2*heads.length);
+	}
+
+	@Override
+	public int peek() {
+		if(size == 0) return -1;
+		int mask = heads.length - 1;
+		for(int i = 0; i < heads.length; i++) {
+			int head = heads[(int)cursor & mask];
+			if(head >= 0 && virtualBucket(store.time[head]) <= cursor) return head;
+			cursor++;
+		}
+		//no event within a full cycle of buckets, so search for the earliest directly
+		int min = -1;
+		for(int head : heads) {
+			if(head >= 0 && (min < 0 || precedes(head, min))) min = head;
+		}
+		cursor = virtualBucket(store.time[min]);
+		return min;
+	}
+
+	@Override
+	public int poll() {
+		int event = peek();
+		if(event < 0) return -1;
+		unlinkNode(event);
+		recordPoll(store.time[event]);
+		return event;
+	}
+
+	@Override
+	public void remove(int event) {
+		unlinkNode(event);
+	}
+
+	private boolean precedes(int a, int b) {
+		double timeA = store.time[a], timeB = store.time[b];
+		return timeA < timeB || (timeA == timeB && store.seq[a] - store.seq[b] < 0);
+	}
+
+	private void recordPoll(double time) {
+		if(time > lastPollTime) {
+			double gap = time - lastPollTime;
+			if(avgGap == 0.0) avgGap = gap;
+			else avgGap += GAP_WEIGHT*(gap - avgGap);
+		}
+		lastPollTime = time;
+		pollsSinceResize++;
+		//re-bucket if the spacing of events has drifted far from the current width
+		if(pollsSinceResize >= heads.length && avgGap > 0.0) {
+			double ratio = targetWidth()/width;
+			if(ratio > 4.0 || ratio < .25) resize(heads.length);
+		}
+	}
+
+	private double targetWidth() {
+		return (avgGap > 0.0) ? 3.0*avgGap : width;
+	}
+
+	private long virtualBucket(double time) {
+		return (long)Math.floor(time/width);
+	}
+
+	private void insert(int event, int bucket) {
+		int after = tails[bucket];
+		while(after >= 0 && precedes(event, after)) after = prev[after];
+		int before = (after < 0) ? heads[bucket] : next[after];
+		prev[event] = after;
+		next[event] = before;
+		if(after < 0) heads[bucket] = event;
+		else next[after] = event;
+		if(before < 0) tails[bucket] = event;
+		else prev[before] = event;
+		bucketOf[event] = bucket;
+	}
+
+	private void unlinkNode(int event) {
+		int bucket = bucketOf[event];
+		int p = prev[event], n = next[event];
+		if(p < 0) heads[bucket] = n;
+		else next[p] = n;
+		if(n < 0) tails[bucket] = p;
+		else prev[n] = p;
+		size--;
+		if(size < heads.length/2 && heads.length > MIN_BUCKETS) resize(heads.length/2);
+	}
+
+	private void resize(int numBuckets) {
+		int[] oldHeads = heads;
+		heads = newBuckets(numBuckets);
+		tails = newBuckets(numBuckets);
+		width = targetWidth();
+		pollsSinceResize = 0;
+		int mask = numBuckets - 1;
+		boolean first = true;
+		for(int event : oldHeads) {
+			while(event >= 0) {
+				int nextEvent = next[event];
+				long vb = virtualBucket(store.time[event]);
+				if(first || vb < cursor) cursor = vb;
+				first = false;
+				insert(event, (int)vb & mask);
+				event = nextEvent;
+			}
+		}
+	}
+
+	private static int[] newBuckets(int numBuckets) {
+		int[] buckets = new int[numBuckets];
+		for(int i = 0; i < numBuckets; i++) buckets[i] = -1;
+		return buckets;
+	}
+}
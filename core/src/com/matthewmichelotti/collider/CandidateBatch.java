@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.matthewmichelotti.collider;
+
+//The candidates of one HitBox (the source) for collision tests, gathered so that
+//  CollisionTester.collideTimes can test the source against all of them at once.
+//The edge components of the source are computed once here rather than for every candidate.
+//The tests are a plain scalar loop rather than jdk.incubator.vector code, since the build
+//  sets sourceCompatibility = 1.6 and the Vector API needs a much newer JDK.  This is a
+//  deliberate substitute for SIMD, and NarrowphaseBenchmark in the demos is a simple timing
+//  loop rather than a JMH measurement.  It compares this batch with testing each candidate
+//  on its own; the gain is mostly for rects.
+final class CandidateBatch {
+	HBPositioned source;
+	final double[] sourceBases = new double[4]; //edge components at source.startTime
+	final double[] sourceEdgeVels = new double[4];
+	final double[] sourceEdges = new double[4]; //edge components at the test start time
+
+	int size = 0;
+	HitBox[] hitBoxes = new HitBox[16];
+	double[] times = new double[16]; //results of CollisionTester.collideTimes
+
+	void init(HBPositioned source) {
+		this.source = source;
+		size = 0;
+	}
+
+	//computes the edge components of the source, once there are candidates to test
+	void initSource(double time) {
+		for(int dir = 0; dir < 4; dir++) {
+			double base = source.getStartEdgeComp(dir);
+			double vel = source.getVelEdgeComp(dir);
+			sourceBases[dir] = base;
+			sourceEdgeVels[dir] = vel;
+			sourceEdges[dir] = base + (time - source.startTime)*vel;
+		}
+	}
+
+	void add(HitBox hitBox) {
+		if(size == hitBoxes.length) {
+			HitBox[] newHitBoxes = new HitBox[2*size];
+			System.arraycopy(hitBoxes, 0, newHitBoxes, 0, size);
+			hitBoxes = newHitBoxes;
+			times = EventStore.copy(times, 2*size);
+		}
+		hitBoxes[size++] = hitBox;
+	}
+
+	//removes the references to HitBoxes so that they do not outlive the test
+	void clear() {
+		for(int i = 0; i < size; i++) hitBoxes[i] = null;
+		source = null;
+		size = 0;
+	}
+}
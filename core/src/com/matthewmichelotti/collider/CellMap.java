@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+//Open-addressing hash table from a grid cell (x, y) to the CellSlab block
+//  holding the directory of groups present in that cell.
+//Keys are packed into a long with 32 bits each for x and y.
+//  Collisions are resolved by linear probing, and removal shifts later entries
+//  of the probe sequence backwards, so no tombstones are needed.
+final class CellMap {
+	private final static long HASH_MULT = 0x9E3779B97F4A7C15L;
+	private final static int MIN_CAPACITY = 64;
+
+	private long[] keys = new long[MIN_CAPACITY];
+	private int[] vals = newVals(MIN_CAPACITY); //-1 for an empty slot
+	private int mask = MIN_CAPACITY - 1;
+	private int shift = 64 - 6;
+	private int size = 0;
+
+	private long numLookups = 0;
+	private long numProbes = 0;
+
+	static long key(int x, int y) {
+		return ((long)x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	int size() {return size;}
+
+	int capacity() {return keys.length;}
+
+	double getLoadFactor() {return size/(double)keys.length;}
+
+	//average number of slots examined per lookup over the lifetime of the table
+	double getAvgProbeLength() {
+		return (numLookups == 0) ? 0.0 : numProbes/(double)numLookups;
+	}
+
+	//longest probe sequence needed to find any entry currently in the table
+	int getMaxProbeLength() {
+		int max = 0;
+		for(int i = 0; i < keys.length; i++) {
+			if(vals[i] < 0) continue;
+			int dist = ((i - slot(keys[i])) & mask) + 1;
+			if(dist > max) max = dist;
+		}
+		return max;
+	}
+
+	//returns the block of the given key, or -1 if absent
+	int get(long key) {
+		numLookups++;
+		int i = slot(key);
+		while(true) {
+			numProbes++;
+			int val = vals[i];
+			if(val < 0 || keys[i] == key) return val;
+			i = (i + 1) & mask;
+		}
+	}
+
+	//sets the block of the given key, where -1 removes the key
+	void put(long key, int block) {
+		if(block < 0) {
+			remove(key);
+			return;
+		}
+		int i = slot(key);
+		while(vals[i] >= 0) {
+			if(keys[i] == key) {
+				vals[i] = block;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		vals[i] = block;
+		size++;
+		if(2*size > keys.length) resize(2*keys.length);
+	}
+
+	private void remove(long key) {
+		int i = slot(key);
+		while(true) {
+			if(vals[i] < 0) return;
+			if(keys[i] == key) break;
+			i = (i + 1) & mask;
+		}
+		size--;
+		//shift back any later entry whose probe sequence passes through the freed slot
+		int hole = i;
+		while(true) {
+			i = (i + 1) & mask;
+			if(vals[i] < 0) break;
+			int home = slot(keys[i]);
+			if(((i - home) & mask) >= ((i - hole) & mask)) {
+				keys[hole] = keys[i];
+				vals[hole] = vals[i];
+				hole = i;
+			}
+		}
+		vals[hole] = -1;
+		if(8*size < keys.length && keys.length > MIN_CAPACITY) resize(keys.length/2);
+	}
+
+	private int slot(long key) {
+		return (int)((key*HASH_MULT) >>> shift);
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldVals = vals;
+		keys = new long[capacity];
+		vals = newVals(capacity);
+		mask = capacity - 1;
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+		for(int j = 0; j < oldKeys.length; j++) {
+			if(oldVals[j] < 0) continue;
+			int i = slot(oldKeys[j]);
+			while(vals[i] >= 0) i = (i + 1) & mask;
+			keys[i] = oldKeys[j];
+			vals[i] = oldVals[j];
+		}
+	}
+
+	private static int[] newVals(int capacity) {
+		int[] vals = new int[capacity];
+		for(int i = 0; i < capacity; i++) vals[i] = -1;
+		return vals;
+	}
+}
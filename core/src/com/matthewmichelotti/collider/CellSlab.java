@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+//Pooled storage for small unordered lists of HitBox handles, one list per grid cell.
+//Each list is a block of ints within one large array: data[block] is the number of handles,
+//  data[block + 1] is the capacity, and the handles follow.  The size of a block is
+//  a power of two, and freed blocks are kept in a free list for each size.
+//An empty list is represented by the block -1.
+//A block may instead hold a small map as consecutive (key, value) pairs, which is used
+//  for the directory of the groups present in a grid cell and their blocks of handles.
+final class CellSlab {
+	private final static int HEADER = 2;
+	private final static int MIN_SIZE_BITS = 2;
+
+	int[] data = new int[1024];
+	private int top = 0;
+	private int[] freeHeads = new int[32];
+
+	CellSlab() {
+		for(int i = 0; i < freeHeads.length; i++) freeHeads[i] = -1;
+	}
+
+	static int first(int block) {return block + HEADER;}
+
+	int size(int block) {return (block < 0) ? 0 : data[block];}
+
+	//returns the block holding the resulting list, which may have moved
+	int add(int block, int handle) {
+		if(block < 0) {
+			block = alloc(MIN_SIZE_BITS);
+		}
+		else {
+			int size = data[block];
+			int end = block + HEADER + size;
+			for(int i = block + HEADER; i < end; i++) {
+				if(data[i] == handle) throw new RuntimeException();
+			}
+			if(size == data[block + 1]) block = realloc(block, 2*(size + HEADER));
+		}
+		int size = data[block];
+		data[block + HEADER + size] = handle;
+		data[block] = size + 1;
+		return block;
+	}
+
+	//returns the block holding the resulting list, which may have moved,
+	//  or -1 if the list is now empty
+	int remove(int block, int handle) {
+		if(block < 0) throw new RuntimeException();
+		int size = data[block];
+		int start = block + HEADER;
+		int last = start + size - 1;
+		int i = start;
+		while(i <= last && data[i] != handle) i++;
+		if(i > last) throw new RuntimeException();
+		data[i] = data[last];
+		size--;
+		data[block] = size;
+		if(size == 0) {
+			free(block);
+			return -1;
+		}
+		int blockSize = data[block + 1] + HEADER;
+		if(blockSize > (1 << MIN_SIZE_BITS) && 4*(size + HEADER) <= blockSize) {
+			block = realloc(block, blockSize/2);
+		}
+		return block;
+	}
+
+	//returns the value of the key in a block of pairs, or -1 if absent
+	int getValue(int block, int key) {
+		if(block < 0) return -1;
+		int end = block + HEADER + data[block];
+		for(int i = block + HEADER; i < end; i += 2) {
+			if(data[i] == key) return data[i + 1];
+		}
+		return -1;
+	}
+
+	//sets the value of the key in a block of pairs, where a value of -1 removes the key;
+	//  returns the block holding the resulting pairs, which may have moved,
+	//  or -1 if there are no pairs left
+	int putValue(int block, int key, int value) {
+		if(block >= 0) {
+			int start = block + HEADER;
+			int last = start + data[block] - 2;
+			for(int i = start; i <= last; i += 2) {
+				if(data[i] != key) continue;
+				if(value >= 0) {
+					data[i + 1] = value;
+					return block;
+				}
+				data[i] = data[last];
+				data[i + 1] = data[last + 1];
+				int size = data[block] - 2;
+				data[block] = size;
+				if(size == 0) {
+					free(block);
+					return -1;
+				}
+				int blockSize = data[block + 1] + HEADER;
+				if(blockSize > (1 << MIN_SIZE_BITS) && 4*(size + HEADER) <= blockSize) {
+					block = realloc(block, blockSize/2);
+				}
+				return block;
+			}
+		}
+		if(value < 0) throw new RuntimeException();
+		if(block < 0) block = alloc(MIN_SIZE_BITS);
+		else if(data[block] + 2 > data[block + 1]) block = realloc(block, 2*(data[block + 1] + HEADER));
+		int size = data[block];
+		data[block + HEADER + size] = key;
+		data[block + HEADER + size + 1] = value;
+		data[block] = size + 2;
+		return block;
+	}
+
+	private int realloc(int block, int newBlockSize) {
+		int newBlock = alloc(Integer.numberOfTrailingZeros(newBlockSize));
+		int size = data[block];
+		System.arraycopy(data, block + HEADER, data, newBlock + HEADER, size);
+		data[newBlock] = size;
+		free(block);
+		return newBlock;
+	}
+
+	private int alloc(int sizeBits) {
+		int block = freeHeads[sizeBits];
+		int blockSize = 1 << sizeBits;
+		if(block >= 0) {
+			freeHeads[sizeBits] = data[block];
+		}
+		else {
+			block = top;
+			top += blockSize;
+			if(top > data.length) {
+				int[] newData = new int[Math.max(2*data.length, top)];
+				System.arraycopy(data, 0, newData, 0, block);
+				data = newData;
+			}
+		}
+		data[block] = 0;
+		data[block + 1] = blockSize - HEADER;
+		return block;
+	}
+
+	private void free(int block) {
+		int sizeBits = Integer.numberOfTrailingZeros(data[block + 1] + HEADER);
+		data[block] = freeHeads[sizeBits];
+		freeHeads[sizeBits] = block;
+	}
+}
@@ -16,7 +16,7 @@
 
 package com.matthewmichelotti.collider;
 
-import java.util.PriorityQueue;
+import com.matthewmichelotti.collider.util.ColliderListener;
 
 /**
  * Class for managing
@@ -32,18 +32,26 @@ import java.util.PriorityQueue;
  */
 
 public final class Collider {
-	private Field field;
+	private Broadphase broadphase;
+	private StaticIndex staticIndex;
 	private double time = 0.0;
 	private CollisionTester collisionTester;
 	private InteractTester interactTester;
 	private double maxForesightTime;
-	private PriorityQueue<FunctionEvent> queue = new PriorityQueue<FunctionEvent>();
+	private double eventQuantum;
+	private boolean cellTraversal;
+	private EventStore events = new EventStore();
+	private EventQueue queue;
 	private ColliderEvent cEvent = new ColliderEvent();
 	private boolean processedCollision = true;
+	private boolean stepping = false;
 	
 	private HitBox curHitBox;
 	private IntBox oldBounds = new IntBox();
 	private IntBox newBounds = new IntBox();
+	private IntBox queryBounds = new IntBox();
+	private IntBox oldQueryBounds = new IntBox();
+	private IntBox enteredBounds = new IntBox();
 	private int oldGroup;
 	private int nextEventId = 0;
 	private boolean changeInteractivity = false;
@@ -51,21 +59,29 @@ public final class Collider {
 	private Array<HitBox> hitBoxRemoveBuffer = new Array<HitBox>();
 	
 	private int testId = 0;
+	private final CandidateBatch candidates = new CandidateBatch();
+	
+	//HitBoxes altered since beginBatch, indexed by HitBox.batchIndex
+	private boolean batching = false;
+	private HitBox[] dirty = new HitBox[16];
+	private IntBox[] dirtyOldBounds = new IntBox[16];
+	private int[] dirtyOldGroups = new int[16];
+	private boolean[] dirtyInteractivity = new boolean[16];
+	private int[] dirtyRanks = new int[16]; //position in the order that the batch is processed in
+	private int numDirty = 0;
 	
 	private int hitBoxesInUse = 0;
 	private int numOverlaps = 0;
+	private long numCancelledEvents = 0;
+	
+	private HitBox[] hitBoxes = new HitBox[64];
+	private int numHandles = 0;
 	
 	private HitBoxPool<HBRect> rectPool = new HitBoxPool<HBRect>() {
-		@Override protected HBRect newObject() {return new HBRect(Collider.this);}
+		@Override protected HBRect newObject() {return register(new HBRect(Collider.this));}
 	};
 	private HitBoxPool<HBCircle> circlePool = new HitBoxPool<HBCircle>() {
-		@Override protected HBCircle newObject() {return new HBCircle(Collider.this);}
-	};
-	private Pool<EReiterate> reiteratePool = new Pool<EReiterate>() {
-		@Override protected EReiterate newObject() {return new EReiterate();}
-	};
-	private Pool<ECollide> collidePool = new Pool<ECollide>() {
-		@Override protected ECollide newObject() {return new ECollide();}
+		@Override protected HBCircle newObject() {return register(new HBCircle(Collider.this));}
 	};
 	
 	private SetPool<HitBox> overlapSetPool = new SetPool<HitBox>();
@@ -77,10 +93,28 @@ public final class Collider {
 	public Collider(ColliderOpts opts) {
 		if(opts.interactTester == null) throw new IllegalArgumentException();
 		if(opts.maxForesightTime <= 0.0) throw new IllegalArgumentException();
-		field = new Field(opts);
+		if(opts.eventQuantum < 0.0) throw new IllegalArgumentException();
+		if(opts.broadphaseType == ColliderOpts.BroadphaseType.SWEEP_AND_PRUNE) {
+			broadphase = new SweepAndPrune(opts, this);
+		}
+		else if(opts.broadphaseType == ColliderOpts.BroadphaseType.TREE) {
+			broadphase = new AABBTree(opts, this);
+		}
+		else {
+			broadphase = new Field(opts, this);
+		}
+		staticIndex = new StaticIndex(opts, this);
 		collisionTester = new CollisionTester(opts);
 		interactTester = opts.interactTester;
 		maxForesightTime = opts.maxForesightTime;
+		eventQuantum = opts.eventQuantum;
+		cellTraversal = opts.cellTraversal;
+		if(opts.eventQueueType == ColliderOpts.EventQueueType.CALENDAR) {
+			queue = new CalendarQueue(events, maxForesightTime/16);
+		}
+		else {
+			queue = new EventHeap(events);
+		}
 	}
 	
 	/**
@@ -103,6 +137,166 @@ public final class Collider {
 		return hitBox;
 	}
 	
+	/**
+	 * Obtains a rectangular HitBox that will never move or change, such as a wall
+	 * or other level geometry.  Static HitBoxes are kept in a separate index that
+	 * is only built once, are never tested against each other, and are never
+	 * re-checked against the grid.
+	 * The only methods that may be called on a static HitBox are {@link HitBox#setOwner(Object)},
+	 * {@link HitBox#free()}, and methods that do not modify it.
+	 * Unlike {@link #makeRect()}, {@link HitBox#commit(double)} should not be called,
+	 * but as with other HitBoxes, collisions are not tested until the next change to the
+	 * Collider, so the owner may be set right after.
+	 * @param x Center x-coordinate.
+	 * @param y Center y-coordinate.
+	 * @param width Width.
+	 * @param height Height.
+	 * @param group Group that the HitBox belongs to, between 0 and {@link HitBox#NUM_GROUPS}-1 inclusive.
+	 * @return A static HBRect obtained from a pool.
+	 */
+	public HBRect makeStaticRect(double x, double y, double width, double height, int group) {
+		if(group < 0) throw new IllegalArgumentException("invalid group:" + group);
+		if(batching) throw new RuntimeException("cannot make a static hitBox during a batch");
+		HBRect hitBox = rectPool.obtain();
+		hitBox.initCommitted(x, y, 0.0, 0.0, width, height, group, Double.POSITIVE_INFINITY);
+		addStatic(hitBox);
+		return hitBox;
+	}
+	
+	/**
+	 * Obtains a circular HitBox that will never move or change.
+	 * See {@link #makeStaticRect(double, double, double, double, int)} for details.
+	 * @param x Center x-coordinate.
+	 * @param y Center y-coordinate.
+	 * @param diam Diameter.
+	 * @param group Group that the HitBox belongs to, between 0 and {@link HitBox#NUM_GROUPS}-1 inclusive.
+	 * @return A static HBCircle obtained from a pool.
+	 */
+	public HBCircle makeStaticCircle(double x, double y, double diam, int group) {
+		if(group < 0) throw new IllegalArgumentException("invalid group:" + group);
+		if(batching) throw new RuntimeException("cannot make a static hitBox during a batch");
+		HBCircle hitBox = circlePool.obtain();
+		hitBox.initCommitted(x, y, 0.0, 0.0, diam, group, Double.POSITIVE_INFINITY);
+		addStatic(hitBox);
+		return hitBox;
+	}
+	
+	/**
+	 * Makes many committed HitBoxes at once.
+	 * This has the same result as making each HitBox with {@link #makeRect()} or
+	 * {@link #makeCircle()}, setting its state, and calling {@link HitBox#commit(double)},
+	 * but is faster for large numbers of HitBoxes.  The HitBoxes are processed together
+	 * as a batch (see {@link #beginBatch()}), so each pair of new HitBoxes is only tested once.
+	 * If a batch has already begun, the new HitBoxes become part of it.
+	 * @param arrays Description of the HitBoxes to make.
+	 * @return The new HitBoxes, in the same order as in arrays.
+	 */
+	public HitBox[] makeHitBoxes(HitBoxArrays arrays) {
+		int n = arrays.count;
+		if(n < 0 || arrays.x == null || arrays.y == null || arrays.widths == null) {
+			throw new IllegalArgumentException();
+		}
+		boolean ownBatch = !batching;
+		if(ownBatch) beginBatch();
+		HitBox[] result = new HitBox[n];
+		for(int i = 0; i < n; i++) {
+			double velX = (arrays.velX == null) ? 0.0 : arrays.velX[i];
+			double velY = (arrays.velY == null) ? 0.0 : arrays.velY[i];
+			int group = (arrays.groups == null) ? 0 : arrays.groups[i];
+			double endTime = (arrays.endTimes == null) ? Double.POSITIVE_INFINITY : arrays.endTimes[i];
+			if(arrays.circles != null && arrays.circles[i]) {
+				HBCircle circ = circlePool.obtain();
+				circ.initCommitted(arrays.x[i], arrays.y[i], velX, velY, arrays.widths[i], group, endTime);
+				result[i] = circ;
+			}
+			else {
+				double height = (arrays.heights == null) ? arrays.widths[i] : arrays.heights[i];
+				HBRect rect = rectPool.obtain();
+				rect.initCommitted(arrays.x[i], arrays.y[i], velX, velY, arrays.widths[i], height, group, endTime);
+				result[i] = rect;
+			}
+			if(arrays.owners != null) result[i].setOwner(arrays.owners[i]);
+			addDirty(result[i], -1, true);
+		}
+		if(ownBatch) commitBatch();
+		return result;
+	}
+	
+	/**
+	 * Makes static HBRects covering the solid tiles of a tile map.
+	 * Tiles are solid if their value is non-zero.  Runs of adjacent tiles
+	 * with the same value are merged greedily into larger rectangles, so that a HitBox
+	 * sliding along a row of tiles does not collide with and separate from each tile in turn.
+	 * The rectangles are made with
+	 * {@link #makeStaticRect(double, double, double, double, int)},
+	 * so this must not be called during a batch (see {@link #beginBatch()}).
+	 * @param tiles Value of each tile, indexed by column and then by row.
+	 *   Columns may have different lengths, with missing tiles treated as empty.
+	 * @param x Left x-coordinate of the tile map.
+	 * @param y Bottom y-coordinate of the tile map.
+	 * @param tileWidth Width of each tile.
+	 * @param tileHeight Height of each tile.
+	 * @param group Group of the rectangles, between 0 and {@link HitBox#NUM_GROUPS}-1 inclusive.
+	 * @return The rectangles, along with the tiles that each one covers.
+	 */
+	public TileMap loadTileMap(int[][] tiles, double x, double y,
+			double tileWidth, double tileHeight, int group)
+	{
+		return new TileMap(this, tiles, x, y, tileWidth, tileHeight, group);
+	}
+	
+	/**
+	 * Same as {@link #loadTileMap(int[][], double, double, double, double, int)}
+	 * where solid tiles have a value of 1.
+	 * @param tiles Whether each tile is solid, indexed by column and then by row.
+	 * @param x Left x-coordinate of the tile map.
+	 * @param y Bottom y-coordinate of the tile map.
+	 * @param tileWidth Width of each tile.
+	 * @param tileHeight Height of each tile.
+	 * @param group Group of the rectangles, between 0 and {@link HitBox#NUM_GROUPS}-1 inclusive.
+	 * @return The rectangles, along with the tiles that each one covers.
+	 */
+	public TileMap loadTileMap(boolean[][] tiles, double x, double y,
+			double tileWidth, double tileHeight, int group)
+	{
+		int[][] values = new int[tiles.length][];
+		for(int col = 0; col < tiles.length; col++) {
+			values[col] = new int[tiles[col].length];
+			for(int row = 0; row < values[col].length; row++) values[col][row] = tiles[col][row] ? 1 : 0;
+		}
+		return loadTileMap(values, x, y, tileWidth, tileHeight, group);
+	}
+	
+	/**
+	 * Begins a batch of changes to HitBoxes.
+	 * Normally, the Collider checks a changed HitBox for collisions as soon as
+	 * another HitBox is changed.  During a batch, every changed HitBox is instead
+	 * remembered until {@link #commitBatch()} is called, which then checks them all
+	 * together.  This is faster when many HitBoxes change at once, such as when
+	 * updating the velocities of a flock: the HitBoxes are updated in the grid in order
+	 * of their grid cells, and a pair of changed HitBoxes is only tested once.
+	 * <p>
+	 * HitBoxes may be changed, committed, made, and freed during a batch,
+	 * but {@link #stepToTime(double)} (or any other method that advances or
+	 * inspects the simulation) and the methods for making static HitBoxes
+	 * must not be called until the batch is committed.
+	 */
+	public void beginBatch() {
+		if(batching) throw new RuntimeException("batch already begun");
+		processCurHBAndCollision();
+		batching = true;
+	}
+	
+	/**
+	 * Checks all of the HitBoxes changed since {@link #beginBatch()} for collisions
+	 * and ends the batch.  Each changed HitBox must have been committed.
+	 */
+	public void commitBatch() {
+		if(!batching) throw new RuntimeException("no batch begun");
+		batching = false;
+		processBatch();
+	}
+	
 	/**
 	 * Same as calling {@link Collider#stepToTime(double, boolean)}
 	 * with inclusive set to true.
@@ -129,15 +323,17 @@ public final class Collider {
 	 */
 	public ColliderEvent stepToTime(double newTime, boolean inclusive) {
 		if(newTime < time) throw new IllegalArgumentException();
+		if(stepping) throw new RuntimeException("stepToTime called from within a listener");
 		processCurHBAndCollision();
 		cEvent.clear();
-		for(FunctionEvent evt = queue.peek();
-				evt != null && (inclusive ? evt.time <= newTime : evt.time < newTime);
+		for(int evt = queue.peek();
+				evt >= 0 && (inclusive ? events.time[evt] <= newTime : events.time[evt] < newTime);
 				evt = queue.peek())
 		{
 			queue.poll();
-			time = evt.time;
-			evt.resolve(this);
+			unlinkEvent(evt);
+			time = events.time[evt];
+			resolveEvent(evt);
 			if(cEvent.isInitialized()) return cEvent;
 			processCurHBAndCollision();
 		}
@@ -145,6 +341,80 @@ public final class Collider {
 		return null;
 	}
 	
+	/**
+	 * Advance the simulation to the specified time, resolving every
+	 * collision/separation that occurs up to and including newTime.
+	 * The appropriate method of the listener is called for each event
+	 * as soon as it occurs, with the time of the Collider set to the time
+	 * of the event.
+	 * The listener may modify, commit and free HitBoxes, and the
+	 * consequences of these changes are taken into account before
+	 * the next event is resolved.
+	 * This is more efficient than calling {@link #stepToTime(double)}
+	 * repeatedly when many events occur.
+	 * The listener must not call stepToTime itself.
+	 * @param newTime Advances simulation to this time.
+	 * @param listener Listener to handle the collisions/separations.
+	 */
+	public void stepToTime(double newTime, ColliderListener listener) {
+		stepToTime(newTime, listener, Integer.MAX_VALUE, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Same as {@link #stepToTime(double, ColliderListener)}, except that
+	 * this method stops early if a given amount of work has been done.
+	 * This can be used to keep the time spent on each frame of a game
+	 * predictable when there are bursts of events, by continuing the
+	 * simulation on the next frame.
+	 * The budget is checked before resolving each event, and at least one
+	 * event is resolved when there is one to resolve.
+	 * @param newTime Advances simulation to this time
+	 *   (unless the budget runs out first).
+	 * @param listener Listener to handle the collisions/separations.
+	 * @param maxEvents Maximum number of events to resolve in this call.
+	 *   This counts internal events of the Collider as well as collisions/separations.
+	 *   Use Integer.MAX_VALUE for no limit.
+	 * @param maxNanos Maximum number of nanoseconds to spend in this call.
+	 *   Use Long.MAX_VALUE for no limit.
+	 * @return The time that the simulation was advanced to.
+	 *   This is newTime, unless the budget ran out, in which case it is the
+	 *   time of the last resolved event.  Other events at that time may be left
+	 *   to be resolved by the next call.
+	 */
+	public double stepToTime(double newTime, ColliderListener listener, int maxEvents, long maxNanos) {
+		if(newTime < time || listener == null) throw new IllegalArgumentException();
+		if(maxEvents <= 0 || maxNanos <= 0) throw new IllegalArgumentException();
+		if(stepping) throw new RuntimeException("stepToTime called from within a listener");
+		boolean timed = (maxNanos != Long.MAX_VALUE);
+		long startNanos = timed ? System.nanoTime() : 0;
+		processCurHBAndCollision();
+		cEvent.clear();
+		stepping = true;
+		int numResolved = 0;
+		for(int evt = queue.peek(); evt >= 0 && events.time[evt] <= newTime; evt = queue.peek()) {
+			if(numResolved > 0 && (numResolved >= maxEvents
+					|| (timed && System.nanoTime() - startNanos >= maxNanos)))
+			{
+				stepping = false;
+				return time;
+			}
+			queue.poll();
+			unlinkEvent(evt);
+			time = events.time[evt];
+			resolveEvent(evt);
+			if(cEvent.isInitialized()) {
+				if(cEvent.isCollision()) listener.collision(cEvent);
+				else listener.separation(cEvent);
+			}
+			processCurHBAndCollision();
+			cEvent.clear();
+			numResolved++;
+		}
+		stepping = false;
+		time = newTime;
+		return time;
+	}
+	
 	/**
 	 * Returns current time of the simulation.
 	 * @return Current time of the simulation.
@@ -168,9 +438,9 @@ public final class Collider {
 	 */
 	public double peekNextEventTime() {
 		processCurHBAndCollision();
-		FunctionEvent evt = queue.peek();
-		if(evt == null) return Double.POSITIVE_INFINITY;
-		else return evt.time;
+		int evt = queue.peek();
+		if(evt < 0) return Double.POSITIVE_INFINITY;
+		else return events.time[evt];
 	}
 	
 	/**
@@ -178,20 +448,59 @@ public final class Collider {
 	 * Specifically:
 	 * <ul>
 	 * <li> Number of HitBoxes in use.
+	 * <li> If {@link ColliderOpts#adaptiveCellWidth} is set, the current cell width and
+	 *      the number of times it has changed.
 	 * <li> Number of entries in the grid.
+	 * <li> For each grid level, number of occupied grid cells in the hash table (outside of
+	 *      the world bounds if any), its load factor, and the average and maximum probe lengths
+	 *      of lookups.
+	 * <li> If a sweep-and-prune or tree broadphase is used, the two items above are replaced by
+	 *      the number of sorted intervals or of tree leaves.
+	 * <li> Number of static HitBoxes, and the number of cells they occupy in their index.
 	 * <li> Number of events in the priority queue.
 	 * <li> Number of tracked overlapping HitBoxes.
+	 * <li> Total number of events removed from the priority queue
+	 *      before their time because an involved HitBox changed.
 	 * </ul>
 	 */
 	public void log() {
 		System.out.println("------- Collider Info -------");
 		System.out.println(" hit boxes: " + hitBoxesInUse);
-		System.out.println(" grid entries: " + field.getNumEntries());
+		broadphase.log();
+		staticIndex.log();
 		System.out.println(" queue size: " + queue.size());
 		System.out.println(" overlaps: " + numOverlaps);
+		System.out.println(" cancelled events: " + numCancelledEvents);
 		System.out.println("-----------------------------");
 	}
 	
+	/**
+	 * Returns the current width of the cells of the grid.
+	 * This is {@link ColliderOpts#cellWidth} unless
+	 * {@link ColliderOpts#adaptiveCellWidth} is set.
+	 * @return The current width of the cells of the grid.
+	 */
+	public double getCellWidth() {
+		return broadphase.getCellWidth();
+	}
+	
+	/**
+	 * Returns the number of times that the grid has switched to a different cell width
+	 * because {@link ColliderOpts#adaptiveCellWidth} is set.
+	 * @return The number of times that the grid has switched to a different cell width.
+	 */
+	public int getNumGridRebuilds() {
+		return broadphase.getNumRebuilds();
+	}
+	
+	HitBox getHitBox(int handle) {
+		return hitBoxes[handle];
+	}
+	
+	int getNumHandles() {
+		return numHandles;
+	}
+	
 	Normal getNormal(HitBox source, HitBox dest) {
 		return collisionTester.normal(source, dest, time);
 	}
@@ -211,8 +520,22 @@ public final class Collider {
 			cEvent.clear();
 			processedCollision = true;
 		}
-		altering(hitBox);
-		field.remove(hitBox, oldGroup, oldBounds, null);
+		if(hitBox.isStatic) {
+			if(curHitBox != null) processCurHBAndCollision();
+			cancelEvents(hitBox);
+			staticIndex.remove(hitBox);
+		}
+		else {
+			altering(hitBox);
+			if(hitBox.batchIndex >= 0) {
+				int index = hitBox.batchIndex;
+				broadphase.remove(hitBox, dirtyOldGroups[index], dirtyOldBounds[index], null);
+				removeDirty(index);
+			}
+			else {
+				broadphase.remove(hitBox, oldGroup, oldBounds, null);
+			}
+		}
 		for(HitBox b : overlapSetPool.iterator(hitBox.overlapSet)) {
 			b.overlapSet = overlapSetPool.remove(b.overlapSet, hitBox);
 			if(!overlapSetPool.wasSuccessful()) throw new RuntimeException();
@@ -228,6 +551,19 @@ public final class Collider {
 	
 	void altering(HitBox hitBox, boolean changeInteractivity) {
 		if(!hitBox.isInitialized()) throw new RuntimeException("cannot alter hitBox after freed");
+		if(hitBox.isStatic) throw new RuntimeException("cannot alter a static hitBox");
+		if(batching) {
+			if(hitBox.batchIndex >= 0) {
+				hitBox.endTime = -1;
+				if(changeInteractivity) dirtyInteractivity[hitBox.batchIndex] = true;
+				return;
+			}
+			int index = addDirty(hitBox, hitBox.getGroup(), changeInteractivity);
+			broadphase.getIndexBounds(hitBox, dirtyOldBounds[index]);
+			hitBox.markTransitionStart();
+			cancelEvents(hitBox);
+			return;
+		}
 		if(curHitBox == hitBox) {
 			hitBox.endTime = -1;
 			if(changeInteractivity) this.changeInteractivity = true;
@@ -236,29 +572,426 @@ public final class Collider {
 		if(curHitBox != null) processCurHBAndCollision();
 		this.curHitBox = hitBox;
 		this.changeInteractivity = changeInteractivity;
-		field.getIndexBounds(hitBox, oldBounds);
+		broadphase.getIndexBounds(hitBox, oldBounds);
 		oldGroup = hitBox.getGroup();
 		hitBox.markTransitionStart();
+		cancelEvents(hitBox);
+	}
+	
+	private void addStatic(HitBox hitBox) {
+		hitBox.isStatic = true;
+		if(curHitBox != null) processCurHBAndCollision();
+		curHitBox = hitBox;
+		changeInteractivity = false;
+	}
+	
+	//tests the new static curHitBox against the HitBoxes of the broadphase, then indexes it
+	private void processCurStatic() {
+		finishTransition(curHitBox, false);
+		testId++;
+		curHitBox.testMark(testId);
+		int[] groupArr = interactTester.getInteractGroups(curHitBox);
+		if(groupArr != null && groupArr.length > 0) findCollisions(curHitBox, groupArr, -1);
+		staticIndex.add(curHitBox);
+		curHitBox = null;
+	}
+	
+	//adds a HitBox to the set of HitBoxes altered during the batch, returning its index
+	private int addDirty(HitBox hitBox, int oldGroup, boolean changeInteractivity) {
+		if(numDirty == dirty.length) {
+			int length = 2*numDirty;
+			HitBox[] newDirty = new HitBox[length];
+			System.arraycopy(dirty, 0, newDirty, 0, numDirty);
+			dirty = newDirty;
+			IntBox[] newBounds = new IntBox[length];
+			System.arraycopy(dirtyOldBounds, 0, newBounds, 0, numDirty);
+			dirtyOldBounds = newBounds;
+			dirtyOldGroups = EventStore.copy(dirtyOldGroups, length);
+			dirtyRanks = EventStore.copy(dirtyRanks, length);
+			boolean[] newInteractivity = new boolean[length];
+			System.arraycopy(dirtyInteractivity, 0, newInteractivity, 0, numDirty);
+			dirtyInteractivity = newInteractivity;
+		}
+		int index = numDirty;
+		numDirty++;
+		if(dirtyOldBounds[index] == null) dirtyOldBounds[index] = new IntBox();
+		dirty[index] = hitBox;
+		dirtyOldGroups[index] = oldGroup;
+		dirtyInteractivity[index] = changeInteractivity;
+		dirtyRanks[index] = Integer.MAX_VALUE;
+		hitBox.batchIndex = index;
+		return index;
+	}
+	
+	private void removeDirty(int index) {
+		dirty[index].batchIndex = -1;
+		numDirty--;
+		if(index != numDirty) {
+			HitBox last = dirty[numDirty];
+			IntBox bounds = dirtyOldBounds[index];
+			dirty[index] = last;
+			dirtyOldBounds[index] = dirtyOldBounds[numDirty];
+			dirtyOldBounds[numDirty] = bounds;
+			dirtyOldGroups[index] = dirtyOldGroups[numDirty];
+			dirtyInteractivity[index] = dirtyInteractivity[numDirty];
+			last.batchIndex = index;
+		}
+		dirty[numDirty] = null;
+	}
+	
+	//Does the work of processCurHBAndCollision for all of the HitBoxes altered during
+	//  the batch.  They are sorted by their lowest grid cell, and all of them are updated
+	//  in the broadphase before any are tested for collisions.  A pair of altered HitBoxes
+	//  is then only tested from the side of the HitBox that comes first.
+	private void processBatch() {
+		int n = numDirty;
+		long[] keys = new long[n];
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++) {
+			HitBox hitBox = dirty[i];
+			if(hitBox.endTime < time) throw new RuntimeException("HitBox altered but HitBox.commit was not called");
+			if(hitBox.getGroup() != dirtyOldGroups[i] && !dirtyInteractivity[i]) throw new RuntimeException();
+			finishTransition(hitBox, true);
+			broadphase.getIndexBounds(hitBox, newBounds);
+			keys[i] = StaticIndex.key(newBounds.l, newBounds.b);
+			order[i] = i;
+		}
+		StaticIndex.sort(keys, order, new long[n], new int[n], 0, n);
+		for(int k = 0; k < n; k++) {
+			int i = order[k];
+			HitBox hitBox = dirty[i];
+			dirtyRanks[i] = k;
+			int oldGroup = dirtyOldGroups[i], newGroup = hitBox.getGroup();
+			broadphase.getIndexBounds(hitBox, newBounds);
+			if(oldGroup == newGroup) broadphase.remove(hitBox, oldGroup, dirtyOldBounds[i], newBounds);
+			else broadphase.remove(hitBox, oldGroup, dirtyOldBounds[i], null);
+			if(oldGroup == newGroup) broadphase.add(hitBox, newGroup, dirtyOldBounds[i], newBounds);
+			else broadphase.add(hitBox, newGroup, null, newBounds);
+		}
+		for(int k = 0; k < n; k++) {
+			int i = order[k];
+			HitBox hitBox = dirty[i];
+			int newGroup = hitBox.getGroup();
+			testId++;
+			hitBox.testMark(testId);
+			for(HitBox b : overlapSetPool.iterator(hitBox.overlapSet)) {
+				if(!b.testMark(testId)) throw new RuntimeException();
+				boolean changeInteractivity = dirtyInteractivity[i];
+				if(b.batchIndex >= 0) {
+					if(dirtyRanks[b.batchIndex] < k) continue;
+					changeInteractivity |= dirtyInteractivity[b.batchIndex];
+				}
+				if(newGroup < 0 || b.getGroup() < 0
+						|| (changeInteractivity && !interactTester.canInteract(hitBox, b)))
+				{
+					hitBoxRemoveBuffer.add(b);
+				}
+				else {
+					checkForSeparation(hitBox, b);
+				}
+			}
+			for(HitBox b : hitBoxRemoveBuffer) {
+				hitBox.overlapSet = overlapSetPool.remove(hitBox.overlapSet, b);
+				if(!overlapSetPool.wasSuccessful()) throw new RuntimeException();
+				b.overlapSet = overlapSetPool.remove(b.overlapSet, hitBox);
+				if(!overlapSetPool.wasSuccessful()) throw new RuntimeException();
+				numOverlaps--;
+			}
+			hitBoxRemoveBuffer.clear();
+			if(newGroup < 0) continue;
+			int[] groupArr = interactTester.getInteractGroups(hitBox);
+			if(groupArr == null || groupArr.length == 0) continue;
+			findCollisions(hitBox, groupArr, k);
+		}
+		for(int i = 0; i < n; i++) {
+			dirty[i].batchIndex = -1;
+			dirty[i] = null;
+		}
+		numDirty = 0;
+	}
+	
+	//Tests a HitBox against the HitBoxes that the broadphase finds for its query bounds,
+	//  and against the static HitBoxes.  HitBoxes already marked with testId are skipped,
+	//  as are HitBoxes of the current batch that were processed before the given rank.
+	//The candidates are gathered first so that they can be tested all at once.
+	private void findCollisions(HitBox hitBox, int[] groupArr, int rank) {
+		candidates.init((HBPositioned)hitBox);
+		broadphase.getQueryBounds(hitBox, queryBounds);
+		hitBox.layoutVersion = broadphase.getLayoutVersion();
+		addCandidates(hitBox, queryBounds, groupArr, rank);
+		addUnplacedCandidates(hitBox, groupArr, rank);
+		testCandidates(hitBox, false);
+	}
+	
+	//adds the candidates that the broadphase finds in a region
+	private void addCandidates(HitBox hitBox, IntBox region, int[] groupArr, int rank) {
+		for(HitBox b : broadphase.iterator(region, groupArr, testId)) {
+			if(b.batchIndex >= 0 && dirtyRanks[b.batchIndex] < rank) continue;
+			if(interactTester.canInteract(hitBox, b)) candidates.add(b);
+		}
+	}
+	
+	//adds the candidates that are not placed in cells of the broadphase:
+	//  oversize HitBoxes and, unless hitBox is static, the static HitBoxes
+	private void addUnplacedCandidates(HitBox hitBox, int[] groupArr, int rank) {
+		for(HitBox b : broadphase.oversizeIterator(groupArr, testId)) {
+			if(b.batchIndex >= 0 && dirtyRanks[b.batchIndex] < rank) continue;
+			if(boundBoxesOverlap(hitBox, b) && interactTester.canInteract(hitBox, b)) {
+				candidates.add(b);
+			}
+		}
+		if(!hitBox.isStatic) {
+			for(HitBox b : staticIndex.iterator(hitBox, groupArr, testId)) {
+				if(interactTester.canInteract(hitBox, b)) candidates.add(b);
+			}
+		}
+	}
+	
+	//queues the collisions of hitBox with the candidates, skipping those that are
+	//  already queued if keepQueued is true
+	private void testCandidates(HitBox hitBox, boolean keepQueued) {
+		collisionTester.collideTimes(candidates, time);
+		for(int i = 0; i < candidates.size; i++) {
+			double collideTime = candidates.times[i];
+			if(collideTime < Double.POSITIVE_INFINITY) {
+				HitBox b = candidates.hitBoxes[i];
+				if(keepQueued && isCollideQueued(hitBox, b)) continue;
+				queueCollide(hitBox, b, quantize(collideTime, hitBox, b), true);
+			}
+		}
+		candidates.clear();
+	}
+	
+	private boolean isCollideQueued(HitBox a, HitBox b) {
+		for(int node = a.pendingEvents; node >= 0; node = events.next(node)) {
+			int event = node >> 1;
+			if(events.kind[event] != EventStore.COLLIDE) continue;
+			if(events.hitBoxA[event] == b.handle || events.hitBoxB[event] == b.handle) return true;
+		}
+		return false;
+	}
+	
+	private void cancelEvents(HitBox hitBox) {
+		while(hitBox.pendingEvents >= 0) {
+			int event = hitBox.pendingEvents >> 1;
+			unlinkEvent(event);
+			queue.remove(event);
+			events.free(event);
+			numCancelledEvents++;
+		}
+	}
+	
+	private <T extends HitBox> T register(T hitBox) {
+		if(numHandles == hitBoxes.length) {
+			HitBox[] newHitBoxes = new HitBox[2*numHandles];
+			System.arraycopy(hitBoxes, 0, newHitBoxes, 0, numHandles);
+			hitBoxes = newHitBoxes;
+		}
+		hitBox.handle = numHandles;
+		hitBoxes[numHandles] = hitBox;
+		numHandles++;
+		return hitBox;
 	}
 
-	void queue(FunctionEvent event) {
-		event.id = nextEventId;
+	private void queue(int event) {
+		events.seq[event] = nextEventId;
 		nextEventId++;
+		events.link(event, 0, hitBoxes[events.hitBoxA[event]]);
+		int b = events.hitBoxB[event];
+		if(b >= 0) events.link(event, 1, hitBoxes[b]);
 		queue.add(event);
 	}
-	void freeEvent(EReiterate evt) {reiteratePool.free(evt);}
-	void freeEvent(ECollide evt) {collidePool.free(evt);}
+	
+	private void unlinkEvent(int event) {
+		events.unlink(event, 0, hitBoxes[events.hitBoxA[event]]);
+		int b = events.hitBoxB[event];
+		if(b >= 0) events.unlink(event, 1, hitBoxes[b]);
+	}
+	
+	private void queueCollide(HitBox a, HitBox b, double eventTime, boolean collided) {
+		int event = events.obtain();
+		events.kind[event] = collided ? EventStore.COLLIDE : EventStore.SEPARATE;
+		events.time[event] = eventTime;
+		events.hitBoxA[event] = a.handle;
+		events.hitBoxB[event] = b.handle;
+		events.changeIdA[event] = a.getChangeId();
+		events.changeIdB[event] = b.getChangeId();
+		queue(event);
+	}
+	
+	private void queueReiterate(HitBox hitBox, double startTime, double endTime, double period) {
+		if(startTime >= endTime) throw new RuntimeException();
+		int event = events.obtain();
+		events.kind[event] = EventStore.REITERATE;
+		events.time[event] = startTime;
+		events.hitBoxA[event] = hitBox.handle;
+		events.hitBoxB[event] = -1;
+		events.changeIdA[event] = hitBox.getChangeId();
+		events.endTime[event] = endTime;
+		events.period[event] = period;
+		queue(event);
+	}
+	
+	private void resolveEvent(int event) {
+		HitBox a = hitBoxes[events.hitBoxA[event]];
+		if(events.kind[event] == EventStore.REITERATE) {
+			resolveReiterate(event, a);
+			return;
+		}
+		if(events.kind[event] == EventStore.ENTER) {
+			resolveEnter(event, a);
+			return;
+		}
+		HitBox b = hitBoxes[events.hitBoxB[event]];
+		if(a.getChangeId() == events.changeIdA[event] && b.getChangeId() == events.changeIdB[event]) {
+			setCollision(a, b, events.kind[event] == EventStore.COLLIDE);
+		}
+		events.free(event);
+	}
+	
+	private void resolveReiterate(int event, HitBox hitBox) {
+		if(events.changeIdA[event] == hitBox.getChangeId()) {
+			double endTime = events.endTime[event];
+			double stepEndTime = time + events.period[event];
+			if(endTime <= stepEndTime) {
+				hitBox.commit(endTime);
+			}
+			else {
+				hitBox.commit(stepEndTime);
+				processCurHBAndCollision(false);
+				events.changeIdA[event] = hitBox.getChangeId();
+				events.time[event] = stepEndTime;
+				queue(event);
+				return;
+			}
+		}
+		events.free(event);
+	}
+
+	//Moves a HitBox on to the cells that its bounds cover next, and tests it against the
+	//  HitBoxes in the cells that were not covered by its previous bounds.
+	//  Its trajectory has not changed, so the events already queued for it are kept.
+	private void resolveEnter(int event, HitBox hitBox) {
+		if(events.changeIdA[event] != hitBox.getChangeId()) {
+			events.free(event);
+			return;
+		}
+		int group = hitBox.getGroup();
+		broadphase.getIndexBounds(hitBox, oldBounds);
+		broadphase.getQueryBounds(hitBox, oldQueryBounds);
+		hitBox.boundStartTime = time;
+		hitBox.boundEndTime = getBoundEndTime(hitBox);
+		hitBox.updateBounds();
+		broadphase.getIndexBounds(hitBox, newBounds);
+		broadphase.remove(hitBox, group, oldBounds, newBounds);
+		int[] groupArr = interactTester.getInteractGroups(hitBox);
+		if(groupArr != null && groupArr.length > 0) {
+			testId++;
+			hitBox.testMark(testId);
+			for(HitBox b : overlapSetPool.iterator(hitBox.overlapSet)) b.testMark(testId);
+			candidates.init((HBPositioned)hitBox);
+			broadphase.getQueryBounds(hitBox, queryBounds);
+			addEnteredCandidates(hitBox, groupArr);
+			hitBox.layoutVersion = broadphase.getLayoutVersion();
+			addUnplacedCandidates(hitBox, groupArr, -1);
+			testCandidates(hitBox, true);
+		}
+		broadphase.add(hitBox, group, oldBounds, newBounds);
+		if(hitBox.boundEndTime < hitBox.endTime) {
+			events.time[event] = hitBox.boundEndTime;
+			queue(event);
+		}
+		else {
+			events.free(event);
+		}
+	}
+	
+	//Adds the candidates in the cells of queryBounds that are not in oldQueryBounds,
+	//  as up to four boxes around oldQueryBounds.  All of queryBounds is used if the two
+	//  cannot be compared, if HitBoxes may have moved to other cells since the last query
+	//  of hitBox, or for an oversize HitBox, which is tested against few cells.
+	//  A HitBox that was oversize was only tested by exact bounds, not by its cells.
+	private void addEnteredCandidates(HitBox hitBox, int[] groupArr) {
+		IntBox region = queryBounds, old = oldQueryBounds;
+		if(region.oversize || old.oversize || hitBox.layoutVersion != broadphase.getLayoutVersion()
+				|| region.level != old.level || region.generation != old.generation
+				|| region.r < old.l || region.l > old.r || region.t < old.b || region.b > old.t)
+		{
+			addCandidates(hitBox, region, groupArr, -1);
+			return;
+		}
+		IntBox box = enteredBounds;
+		box.level = region.level;
+		box.oversize = false;
+		box.generation = region.generation;
+		int l = Math.max(region.l, old.l), r = Math.min(region.r, old.r);
+		if(region.l < old.l) addEnteredCandidates(hitBox, groupArr, region.l, region.b, old.l - 1, region.t);
+		if(region.r > old.r) addEnteredCandidates(hitBox, groupArr, old.r + 1, region.b, region.r, region.t);
+		if(region.b < old.b) addEnteredCandidates(hitBox, groupArr, l, region.b, r, old.b - 1);
+		if(region.t > old.t) addEnteredCandidates(hitBox, groupArr, l, old.t + 1, r, region.t);
+	}
+	
+	private void addEnteredCandidates(HitBox hitBox, int[] groupArr, int l, int b, int r, int t) {
+		IntBox box = enteredBounds;
+		box.l = l;
+		box.b = b;
+		box.r = r;
+		box.t = t;
+		addCandidates(hitBox, box, groupArr, -1);
+	}
+	
+	//End time of the bounds that a moving HitBox is placed in the broadphase with, after which
+	//  an ENTER event moves it on.  With cellTraversal, this is when it enters another cell.
+	//  Otherwise, it is about when it has moved one cell width, as given by the grid period.
+	private double getBoundEndTime(HitBox hitBox) {
+		if(cellTraversal) return getCellEntryTime(hitBox);
+		return Arith.min(time + broadphase.getGridPeriod(hitBox), hitBox.endTime);
+	}
+	
+	//First time after the current time that the bounds of a moving HitBox enter a cell of the
+	//  broadphase, but no later than its end time.  An edge moving outward enters the next cell
+	//  when it passes the next multiple of the cell width.
+	private double getCellEntryTime(HitBox hitBox) {
+		HBPositioned p = (HBPositioned)hitBox;
+		double width = broadphase.getCellWidth(hitBox);
+		double result = hitBox.endTime;
+		for(int dir = 0; dir < 4; dir++) {
+			double vel = p.getVelEdgeComp(dir);
+			if(vel <= 0.0) continue;
+			double edge = p.getEdgeComp(dir, time);
+			double boundary = (Math.floor(edge/width) + 1.0)*width;
+			double entryTime = time + (boundary - edge)/vel;
+			if(!(entryTime > time)) entryTime = time + (boundary + width - edge)/vel;
+			if(entryTime < result) result = entryTime;
+		}
+		return result;
+	}
+	
+	private void queueEnter(HitBox hitBox, double eventTime) {
+		int event = events.obtain();
+		events.kind[event] = EventStore.ENTER;
+		events.time[event] = eventTime;
+		events.hitBoxA[event] = hitBox.handle;
+		events.hitBoxB[event] = -1;
+		events.changeIdA[event] = hitBox.getChangeId();
+		queue(event);
+	}
 
 	void processCurHBAndCollision() {
 		processCurHBAndCollision(true);
 	}
 	
-	void processCurHBAndCollision(boolean checkReiterate) {
+	private void processCurHBAndCollision(boolean checkReiterate) {
+		if(batching) throw new RuntimeException("batch was not committed");
 		processCollision();
 		if(curHitBox == null) return;
+		if(curHitBox.isStatic) {
+			processCurStatic();
+			return;
+		}
 		if(curHitBox.endTime < time) throw new RuntimeException("HitBox altered but HitBox.commit was not called");
 		testId++;
-		if(checkReiterate) checkForReiteration();
+		finishTransition(curHitBox, checkReiterate);
 		int newGroup = curHitBox.getGroup();
 		if(newGroup != oldGroup && !changeInteractivity) throw new RuntimeException();
 		for(HitBox b : overlapSetPool.iterator(curHitBox.overlapSet)) {
@@ -278,25 +1011,28 @@ public final class Collider {
 			numOverlaps--;
 		}
 		hitBoxRemoveBuffer.clear();
-		field.getIndexBounds(curHitBox, newBounds);
-		if(oldGroup == newGroup) field.remove(curHitBox, oldGroup, oldBounds, newBounds);
-		else field.remove(curHitBox, oldGroup, oldBounds, null);
+		broadphase.getIndexBounds(curHitBox, newBounds);
+		if(oldGroup == newGroup) broadphase.remove(curHitBox, oldGroup, oldBounds, newBounds);
+		else broadphase.remove(curHitBox, oldGroup, oldBounds, null);
 		int[] groupArr = null;
 		if(newGroup >= 0) groupArr = interactTester.getInteractGroups(curHitBox);
 		curHitBox.testMark(testId);
 		if(groupArr != null && groupArr.length > 0) {
-			for (HitBox b : field.iterator(newBounds, groupArr, testId)) {
-				if (interactTester.canInteract(curHitBox, b)) {
-					checkForCollision(curHitBox, b);
-				}
-			}
+			findCollisions(curHitBox, groupArr, -1);
 		}
-		if(oldGroup == newGroup) field.add(curHitBox, newGroup, oldBounds, newBounds);
-		else field.add(curHitBox, newGroup, null, newBounds);
+		if(oldGroup == newGroup) broadphase.add(curHitBox, newGroup, oldBounds, newBounds);
+		else broadphase.add(curHitBox, newGroup, null, newBounds);
 		curHitBox = null;
 		changeInteractivity = false;
 	}
 	
+	private static boolean boundBoxesOverlap(HitBox a, HitBox b) {
+		for(int dir = 0; dir < 4; dir++) {
+			if(a.getBoundEdgeComp(dir) + b.getBoundEdgeComp(Dir.opp(dir)) < 0.0) return false;
+		}
+		return true;
+	}
+	
 	private void processCollision() {
 		if(processedCollision) return;
 		processedCollision = true;
@@ -324,39 +1060,55 @@ public final class Collider {
 		}
 	}
 
-	void setCollision(HitBox a, HitBox b, boolean collided) {
+	private void setCollision(HitBox a, HitBox b, boolean collided) {
 		cEvent.init(a, b, collided);
 		processedCollision = false;
 	}
 	
-	private void checkForReiteration() {
-		if(!curHitBox.isMoving()) return;
-		double period = field.getGridPeriod(curHitBox);
-		if(period > maxForesightTime) period = maxForesightTime;
+	//settles the end time of a committed HitBox and caches the bounds that follow from it
+	private void finishTransition(HitBox hitBox, boolean checkReiterate) {
+		hitBox.maxBoundEdgeVel = hitBox.getMaxBoundEdgeVel();
+		if(checkReiterate) checkForReiteration(hitBox);
+		hitBox.boundStartTime = hitBox.startTime;
+		hitBox.boundEndTime = hitBox.endTime;
+		if(!hitBox.isStatic && hitBox.getGroup() >= 0 && hitBox.isMoving()) {
+			hitBox.boundEndTime = getBoundEndTime(hitBox);
+			if(hitBox.boundEndTime < hitBox.endTime) queueEnter(hitBox, hitBox.boundEndTime);
+		}
+		hitBox.updateBounds();
+	}
+	
+	private void checkForReiteration(HitBox hitBox) {
+		if(!hitBox.isMoving()) return;
+		//only needed to bound the time tested by the narrowphase, since ENTER events
+		//  move the HitBox through the broadphase
+		double period = maxForesightTime;
 		double firstReiterTime = time + period;
-		if(firstReiterTime >= curHitBox.endTime) return;
-		EReiterate event = reiteratePool.obtain();
-		event.init(curHitBox, firstReiterTime, curHitBox.endTime, period);
-		curHitBox.endTime = firstReiterTime;
-		queue(event);
+		if(firstReiterTime >= hitBox.endTime) return;
+		queueReiterate(hitBox, firstReiterTime, hitBox.endTime, period);
+		hitBox.endTime = firstReiterTime;
 	}
 	
 	private void checkForCollision(HitBox a, HitBox b) {
 		double collideTime = collisionTester.collideTime(a, b, time);
-		if(collideTime < Double.POSITIVE_INFINITY) {
-			ECollide event = collidePool.obtain();
-			event.init(a, b, collideTime, true);
-			queue(event);
-		}
+		if(collideTime < Double.POSITIVE_INFINITY) queueCollide(a, b, quantize(collideTime, a, b), true);
 	}
 	
 	private void checkForSeparation(HitBox a, HitBox b) {
 		double collideTime = collisionTester.separateTime(a, b, time);
-		if(collideTime < Double.POSITIVE_INFINITY) {
-			ECollide event = collidePool.obtain();
-			event.init(a, b, collideTime, false);
-			queue(event);
-		}
+		if(collideTime < Double.POSITIVE_INFINITY) queueCollide(a, b, quantize(collideTime, a, b), false);
+	}
+	
+	//rounds eventTime up to a multiple of eventQuantum, except that an event that
+	//  is already due is resolved at the current time
+	private double quantize(double eventTime, HitBox a, HitBox b) {
+		if(eventQuantum == 0.0 || eventTime <= time) return eventTime;
+		double k = Math.ceil(eventTime/eventQuantum);
+		//the division may round either way, such as for a time of .1 + .2 with a quantum of .1
+		if((k - 1.0)*eventQuantum >= eventTime) k--;
+		else if(k*eventQuantum < eventTime) k++;
+		double result = Arith.min(k*eventQuantum, Arith.min(a.endTime, b.endTime));
+		return Arith.max(result, eventTime);
 	}
 	
 	private abstract class HitBoxPool <T extends HitBox> extends Pool<T> {
@@ -37,6 +37,62 @@ public final class ColliderOpts {
 	 */
 	public double cellWidth;
 	
+	/**
+	 * Number of levels in the Collider grid, at most 16.
+	 * Level k of the grid has cells of width cellWidth*2^k.
+	 * A HitBox is placed in the lowest level whose cells are at least as wide and tall as the
+	 * HitBox, or in the top level if there is no such level, unless its group is given a level
+	 * in {@link #groupGridLevels}.
+	 * Multiple levels are useful when HitBoxes vary greatly in size, since large HitBoxes then
+	 * occupy few cells and small HitBoxes are not tested against everything in a large cell.
+	 * Values less than 1 are treated as 1, which is a single grid with cells of width cellWidth.
+	 * Only used by {@link BroadphaseType#GRID}.
+	 */
+	public int gridLevels;
+	
+	/**
+	 * Optional grid level for each group, indexed by group.
+	 * Groups that are not in the array or whose entry is -1 have their level chosen
+	 * automatically from the size of each HitBox, as described in {@link #gridLevels}.
+	 * May be null.
+	 */
+	public int[] groupGridLevels;
+	
+	/**
+	 * An efficiency parameter for very large HitBoxes.
+	 * If positive, a HitBox whose bounds (including its motion until it is next
+	 * re-checked against the grid) cover more than this many grid cells is not
+	 * placed in the grid, but in a separate list for its group.  Every HitBox that
+	 * interacts with that group then tests its bounds against the list directly,
+	 * so this should only apply to a few HitBoxes.
+	 * Should be set to zero to place all HitBoxes in the grid.
+	 * Only used by {@link BroadphaseType#GRID}.
+	 */
+	public int oversizeCells;
+	
+	/**
+	 * An efficiency parameter for HitBoxes that are committed often with small changes.
+	 * If positive, a HitBox is placed in the grid cells covering its bounds enlarged by
+	 * this distance on each side, and those cells are kept until its bounds leave them.
+	 * This saves updating the grid each time a HitBox is committed or re-checked
+	 * against the grid as it moves, at the cost of more HitBoxes being tested against
+	 * each other.  A good choice is around half of cellWidth.
+	 * Should be set to zero to always place HitBoxes in the fewest cells.
+	 * Only used by {@link BroadphaseType#GRID}.
+	 */
+	public double gridMargin;
+
+	/**
+	 * If true, the grid measures the sizes of HitBoxes and the number of HitBoxes
+	 * returned per grid query as the simulation runs, and switches to a different cell width
+	 * when that would be considerably cheaper.  {@link #cellWidth} is then only the initial
+	 * cell width, and the cell width stays within a factor of 8 of it.
+	 * HitBoxes are moved to the new grid a few at a time over the following updates.
+	 * The current cell width is given by {@link Collider#getCellWidth()}.
+	 * Only used by {@link BroadphaseType#GRID}.
+	 */
+	public boolean adaptiveCellWidth;
+	
 	/**
 	 * An efficiency parameter representing a bound on how far in advance
 	 * collisions/separations may be tested for.
@@ -46,6 +102,18 @@ public final class ColliderOpts {
 	 */
 	public double maxForesightTime;
 	
+	/**
+	 * If true, a moving HitBox is followed from cell to cell of the broadphase.
+	 * Each time its bounds enter new cells, it is only tested against the HitBoxes in those
+	 * cells, and the collisions/separations already found for it are kept.
+	 * Otherwise, its bounds are moved on in the same way each time it
+	 * moves about one cell width, which may cover more cells at once.
+	 * This is faster for fast HitBoxes that live long, such as bullets, in crowded scenes.
+	 * Either way, a moving HitBox is still re-checked against everything near it every
+	 * {@link #maxForesightTime}.
+	 */
+	public boolean cellTraversal;
+	
 	/**
 	 * Roughly the distance that two collided HitBoxes must be from each other before
 	 * a separated event is generated.  This must be non-zero due to numerical stability
@@ -54,6 +122,107 @@ public final class ColliderOpts {
 	 */
 	public double separateBuffer;
 	
+	/**
+	 * If positive, the times of collisions/separations are rounded up to
+	 * the next multiple of eventQuantum, but never past the end time
+	 * committed for an involved HitBox.
+	 * An event time that is already a multiple of eventQuantum is kept,
+	 * and an event that is due at the current time of the Collider
+	 * (such as for HitBoxes that overlap when committed) is not delayed.
+	 * This is useful if only the tick in which a collision/separation
+	 * happens matters, such as for a server that runs at a fixed tick rate.
+	 * The events in a tick then all occur at the end of the tick and are
+	 * resolved together, in the order in which they were found.
+	 * Should be set to zero to use exact event times.
+	 */
+	public double eventQuantum;
+	
+	/**
+	 * Optional bounds of the region where HitBoxes are expected to be.
+	 * If worldMaxX &gt; worldMinX and worldMaxY &gt; worldMinY, grid cells
+	 * within these bounds are stored in flat arrays that are indexed directly,
+	 * which is faster than the hash table used for the conceptually infinite grid.
+	 * HitBoxes may still extend outside of the bounds, in which case the
+	 * outlying cells are stored in the hash table.
+	 * When a cell within the bounds is first used at some level of the grid,
+	 * that level allocates one int for each of its cells within the bounds,
+	 * shared by all groups.  This is about
+	 * (worldMaxX - worldMinX)*(worldMaxY - worldMinY)/cellWidth<sup>2</sup> ints for
+	 * the finest level, and a quarter as many for each coarser level
+	 * (see {@link #gridLevels}), so the bounds should not be much larger than needed.
+	 * While {@link #adaptiveCellWidth} rebuilds the grid, the old and new grids
+	 * each hold their own arrays.
+	 * Only used by {@link BroadphaseType#GRID}.
+	 * Leave these as zero to disable the bounds.
+	 */
+	public double worldMinX, worldMinY, worldMaxX, worldMaxY;
+	
+	/**
+	 * Selects the data structure used to order potential collisions/separations
+	 * and internal events by time.
+	 * If null, {@link EventQueueType#HEAP} is used.
+	 */
+	public EventQueueType eventQueueType;
+	
+	/**
+	 * Selects the data structure used to find pairs of HitBoxes that may collide.
+	 * If null, {@link BroadphaseType#GRID} is used.
+	 */
+	public BroadphaseType broadphaseType;
+	
 	/**Creates a blank ColliderOpts object.  Fields must be set manually.*/
 	public ColliderOpts() {}
+	
+	/**
+	 * Data structures that may be used by a {@link Collider} to order its events.
+	 * @see ColliderOpts#eventQueueType
+	 */
+	public static enum EventQueueType {
+		/**
+		 * A 4-ary heap, in which each event has up to four children.
+		 * Adding and removing an event takes O(log n) time, with a shallower tree
+		 * than a binary heap.
+		 * This is a safe choice for any distribution of event times.
+		 */
+		HEAP,
+		
+		/**
+		 * A calendar queue, which places events in buckets according to their time.
+		 * Adding and removing an event takes amortized O(1) time when events
+		 * are spread fairly evenly over the next {@link ColliderOpts#maxForesightTime}.
+		 * The bucket width adapts automatically to the observed spacing of events.
+		 */
+		CALENDAR
+	}
+	
+	/**
+	 * Data structures that may be used by a {@link Collider} to find pairs of
+	 * HitBoxes that may collide.
+	 * @see ColliderOpts#broadphaseType
+	 */
+	public static enum BroadphaseType {
+		/**
+		 * A grid of cells of width {@link ColliderOpts#cellWidth}, where each HitBox
+		 * is referenced from every cell that it may pass through.
+		 * This is a good choice when most HitBoxes are of similar size and spread evenly.
+		 */
+		GRID,
+		
+		/**
+		 * A list of the bounds of HitBoxes sorted along the x-axis,
+		 * kept in order by insertion sort as the HitBoxes move.
+		 * Bounds are rounded out to multiples of {@link ColliderOpts#cellWidth}.
+		 * This may beat a grid when HitBoxes are spread out mostly along the x-axis,
+		 * such as in long horizontal corridors, or when they move slowly.
+		 */
+		SWEEP_AND_PRUNE,
+		
+		/**
+		 * A balanced tree of bounding boxes for each group, where each HitBox
+		 * is a leaf with its bounds enlarged by half of {@link ColliderOpts#cellWidth}.
+		 * Unlike a grid, this adapts to HitBoxes that are densely clustered in some
+		 * places and sparse elsewhere, or that vary greatly in size.
+		 */
+		TREE
+	}
 }
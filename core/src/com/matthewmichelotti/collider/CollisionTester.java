@@ -17,88 +17,175 @@
 package com.matthewmichelotti.collider;
 
 final class CollisionTester {
-	private double separateBuffer;
-	private HBRect dummyRect = new HBRect(null);
-	private HBCircle dummyPoint = new HBCircle(null);
-	private HBRect dummyRect2 = new HBRect(null);
-	private HBCircle dummyCircle = new HBCircle(null);
-	private Normal normal = new Normal();
+	//cases of pair(a, b)
+	private final static int RECT_RECT = HitBox.RECT*HitBox.NUM_SHAPES + HitBox.RECT;
+	private final static int RECT_CIRC = HitBox.RECT*HitBox.NUM_SHAPES + HitBox.CIRCLE;
+	private final static int CIRC_RECT = HitBox.CIRCLE*HitBox.NUM_SHAPES + HitBox.RECT;
+	private final static int CIRC_CIRC = HitBox.CIRCLE*HitBox.NUM_SHAPES + HitBox.CIRCLE;
+	
+	private final double separateBuffer;
+	private final Normal normal = new Normal();
 	
 	CollisionTester(ColliderOpts opts) {
 		this.separateBuffer = opts.separateBuffer;
 		if(this.separateBuffer <= 0.0) throw new IllegalArgumentException();
 	}
 	
+	//NOTE: the collision and separation times are computed from the fields of the HitBoxes
+	//  without modifying any state, so they may be called from any thread;
+	//  only normal(...) reuses an object for its result
+	
 	double collideTime(HitBox a, HitBox b, double startTime) {
 		double endTime = Arith.min(a.endTime, b.endTime);
 		if(endTime <= startTime) return Double.POSITIVE_INFINITY;
+		if(!cachedBoundsOverlap(a, b, endTime)) return Double.POSITIVE_INFINITY;
 		if(!boundBoxTest(a, b, startTime, endTime)) return Double.POSITIVE_INFINITY;
 		return getTime(a, b, startTime, endTime, true);
 	}
 	
+	//Same as calling collideTime(batch.source, b, startTime) for each candidate b of the batch,
+	//  storing the results in batch.times.  Most candidates are rejected by the bounds cached
+	//  in the HitBoxes alone.  The bound box test then reads the fields of each candidate
+	//  directly against edge components of the source that are only computed once.
+	//  Pairs of rects are then solved the same way, and the remaining pairs go through getTime.
+	void collideTimes(CandidateBatch batch, double startTime) {
+		if(batch.size == 0) return;
+		batch.initSource(startTime);
+		HBPositioned a = batch.source;
+		double aStartTime = a.startTime;
+		double aEndTime = a.endTime;
+		double[] aBases = batch.sourceBases;
+		double[] aVels = batch.sourceEdgeVels;
+		HitBox[] hitBoxes = batch.hitBoxes;
+		double[] times = batch.times;
+		for(int i = 0; i < batch.size; i++) {
+			times[i] = Double.POSITIVE_INFINITY;
+			HitBox b = hitBoxes[i];
+			double endTime = Arith.min(aEndTime, b.endTime);
+			if(endTime <= startTime) continue;
+			if(!cachedBoundsOverlap(a, b, endTime)) continue;
+			
+			//bound box test, with the edge components of b written out as in HBRect
+			HBPositioned p = (HBPositioned)b;
+			double hw, hh, velHW, velHH;
+			switch(b.shape) {
+			case HitBox.RECT:
+				HBRect rect = (HBRect)b;
+				hw = rect.startHW;
+				hh = rect.startHH;
+				velHW = rect.velHW;
+				velHH = rect.velHH;
+				break;
+			case HitBox.CIRCLE:
+				HBCircle circ = (HBCircle)b;
+				hw = circ.startRad;
+				hh = hw;
+				velHW = circ.velRad;
+				velHH = velHW;
+				break;
+			default: throw new IllegalArgumentException();
+			}
+			double bStartTime = p.startTime;
+			if(!boundsOverlap(aBases[Dir.R], aVels[Dir.R], aStartTime,
+					-p.startX + hw, -p.velX + velHW, bStartTime, startTime, endTime)) continue;
+			if(!boundsOverlap(aBases[Dir.U], aVels[Dir.U], aStartTime,
+					-p.startY + hh, -p.velY + velHH, bStartTime, startTime, endTime)) continue;
+			if(!boundsOverlap(aBases[Dir.L], aVels[Dir.L], aStartTime,
+					p.startX + hw, p.velX + velHW, bStartTime, startTime, endTime)) continue;
+			if(!boundsOverlap(aBases[Dir.D], aVels[Dir.D], aStartTime,
+					p.startY + hh, p.velY + velHH, bStartTime, startTime, endTime)) continue;
+			
+			double result;
+			if(pair(a, b) == RECT_RECT) {
+				result = rectRectCollideTime(batch, (HBRect)b, startTime, endTime);
+			}
+			else result = getTime(a, b, startTime, endTime, true);
+			if(result < endTime) times[i] = result;
+		}
+	}
+	
+	//Whether the cached bounds of two HitBoxes overlap, or true if they do not last until
+	//  endTime.  Otherwise they cover the whole time tested, so if they do not overlap then
+	//  neither do the bounds from startTime to endTime in boundBoxTest, which are never larger.
+	private static boolean cachedBoundsOverlap(HitBox a, HitBox b, double endTime) {
+		if(a.boundEndTime < endTime || b.boundEndTime < endTime) return true;
+		return !(a.boundR + b.boundL <= 0.0 || a.boundU + b.boundD <= 0.0
+				|| a.boundL + b.boundR <= 0.0 || a.boundD + b.boundU <= 0.0);
+	}
+	
+	//one edge of boundBoxTest, from the edge components of a and of the opposite edge of b
+	private static boolean boundsOverlap(double aBase, double aVel, double aStartTime,
+			double bBase, double bVel, double bStartTime, double startTime, double endTime)
+	{
+		double aBound = aBase + aVel*(((aVel > 0.0) ? endTime : startTime) - aStartTime);
+		double bBound = bBase + bVel*(((bVel > 0.0) ? endTime : startTime) - bStartTime);
+		return !(aBound + bBound <= 0.0);
+	}
+	
+	//rectRectTime for a collision between batch.source and b
+	private static double rectRectCollideTime(CandidateBatch batch, HBRect b, double startTime,
+			double endTime)
+	{
+		double[] aEdges = batch.sourceEdges, aVels = batch.sourceEdgeVels;
+		return rectRectTime(
+				aEdges[Dir.R] + b.getEdgeComp(Dir.L, startTime),
+				aEdges[Dir.U] + b.getEdgeComp(Dir.D, startTime),
+				aEdges[Dir.L] + b.getEdgeComp(Dir.R, startTime),
+				aEdges[Dir.D] + b.getEdgeComp(Dir.U, startTime),
+				aVels[Dir.R] + b.getVelEdgeComp(Dir.L),
+				aVels[Dir.U] + b.getVelEdgeComp(Dir.D),
+				aVels[Dir.L] + b.getVelEdgeComp(Dir.R),
+				aVels[Dir.D] + b.getVelEdgeComp(Dir.U),
+				startTime, endTime, true);
+	}
+	
 	double separateTime(HitBox a, HitBox b, double startTime) {
 		double endTime = Arith.min(a.endTime, b.endTime);
 		if(endTime <= startTime) return Double.POSITIVE_INFINITY;
-		boolean aIsRect = (a.getClass() == HBRect.class);
-		boolean bIsRect = (b.getClass() == HBRect.class);
-		if(aIsRect && bIsRect) {
-			HBRect rect = (HBRect)a;
-			double hw = rect.startHW;
-			double hh = rect.startHH;
-			rect.startHW += separateBuffer;
-			rect.startHH += separateBuffer;
-			double result = getTime(a, b, startTime, endTime, false);
-			rect.startHW = hw;
-			rect.startHH = hh;
-			return result;
-		}
-		else {
-			HBCircle circ = (HBCircle)(aIsRect ? b : a);
-			double rad = circ.startRad;
-			circ.startRad += separateBuffer;
-			double result = getTime(a, b, startTime, endTime, false);
-			circ.startRad = rad;
-			return result;
-		}
+		return getTime(a, b, startTime, endTime, false);
 	}
 	
 	Normal normal(HitBox src, HitBox dst, double time) {
-		if(src.getClass() == HBRect.class) {
-			if(dst.getClass() == HBRect.class) return rectRectNormal((HBRect)src, (HBRect)dst, time);
-			else return rectCircNormal((HBRect)src, (HBCircle)dst, time);
-		}
-		else {
-			if(dst.getClass() == HBRect.class) {
-				Normal normal = rectCircNormal((HBRect)dst, (HBCircle)src, time);
-				normal.x = -normal.x;
-				normal.y = -normal.y;
-				return normal;
-			}
-			else return circCircNormal((HBCircle)src, (HBCircle)dst, time);
+		switch(pair(src, dst)) {
+		case RECT_RECT: rectRectNormal((HBRect)src, (HBRect)dst, time, normal); break;
+		case RECT_CIRC: rectCircNormal((HBRect)src, (HBCircle)dst, 0.0, time, normal); break;
+		case CIRC_RECT:
+			rectCircNormal((HBRect)dst, (HBCircle)src, 0.0, time, normal);
+			normal.x = -normal.x;
+			normal.y = -normal.y;
+			break;
+		case CIRC_CIRC: circCircNormal((HBCircle)src, (HBCircle)dst, time, normal); break;
+		default: throw new IllegalArgumentException();
 		}
+		return normal;
 	}
 	
+	//For separations, the HitBoxes are tested as if a was separateBuffer wider on each side,
+	//  or b if only b is a circle, since separations are found by where they stop overlapping.
 	private double getTime(HitBox a, HitBox b, double startTime, double endTime, boolean forCollide) {
-		boolean aIsRect = (a.getClass() == HBRect.class);
-		boolean bIsRect = (b.getClass() == HBRect.class);
+		double grow = forCollide ? 0.0 : separateBuffer;
 		double result;
-		if(aIsRect) {
-			if(bIsRect) result = rectRectTime((HBRect)a, (HBRect)b, startTime, endTime, forCollide);
-			else result = rectCircTime((HBRect)a, (HBCircle)b, startTime, endTime, forCollide);
-		}
-		else {
-			if(bIsRect) result = rectCircTime((HBRect)b, (HBCircle)a, startTime, endTime, forCollide);
-			else result = circCircTime((HBCircle)a, (HBCircle)b, startTime, forCollide);
+		switch(pair(a, b)) {
+		case RECT_RECT:
+			result = rectRectTime((HBRect)a, grow, (HBRect)b, startTime, endTime, forCollide);
+			break;
+		case RECT_CIRC:
+			result = rectCircTime((HBRect)a, (HBCircle)b, grow, startTime, endTime, forCollide);
+			break;
+		case CIRC_RECT:
+			result = rectCircTime((HBRect)b, (HBCircle)a, grow, startTime, endTime, forCollide);
+			break;
+		case CIRC_CIRC:
+			result = circCircTime((HBCircle)a, grow, (HBCircle)b, startTime, forCollide);
+			break;
+		default: throw new IllegalArgumentException();
 		}
 		if(result >= endTime) result = Double.POSITIVE_INFINITY;
 		return result;
 	}
 	
-	private double rectCircTime(HBRect a, HBCircle b, double startTime, double endTime,
-			boolean forCollide)
-	{
-		if(forCollide) return rectCircCollideTime(a, b, startTime, endTime);
-		else return rectCircSeparateTime(a, b, startTime, endTime);
+	private static int pair(HitBox a, HitBox b) {
+		return a.shape*HitBox.NUM_SHAPES + b.shape;
 	}
 	
 	private static boolean boundBoxTest(HitBox a, HitBox b, double startTime, double endTime) {
@@ -110,44 +197,89 @@ final class CollisionTester {
 		return true;
 	}
 	
-	private static double rectRectTime(HBRect a, HBRect b, double startTime, double endTime,
+	//edge component of a rect at a time, as in HBRect.getEdgeComp, from the position
+	//  and half-dimension (or radius of a circle) along the edge at the start time of the
+	//  HitBox, their velocities, and the time since that start time
+	private static double edge(double pos, double hDim, double vel, double velHDim, double dt) {
+		return (pos + hDim) + dt*(vel + velHDim);
+	}
+	
+	private static double rectRectTime(HBRect a, double aGrow, HBRect b, double startTime,
+			double endTime, boolean forCollide)
+	{
+		double aDt = startTime - a.startTime;
+		double bDt = startTime - b.startTime;
+		double aHW = a.startHW + aGrow;
+		double aHH = a.startHH + aGrow;
+		return rectRectTime(
+				edge(a.startX, aHW, a.velX, a.velHW, aDt) + edge(-b.startX, b.startHW, -b.velX, b.velHW, bDt),
+				edge(a.startY, aHH, a.velY, a.velHH, aDt) + edge(-b.startY, b.startHH, -b.velY, b.velHH, bDt),
+				edge(-a.startX, aHW, -a.velX, a.velHW, aDt) + edge(b.startX, b.startHW, b.velX, b.velHW, bDt),
+				edge(-a.startY, aHH, -a.velY, a.velHH, aDt) + edge(b.startY, b.startHH, b.velY, b.velHH, bDt),
+				(a.velX + a.velHW) + (-b.velX + b.velHW),
+				(a.velY + a.velHH) + (-b.velY + b.velHH),
+				(-a.velX + a.velHW) + (b.velX + b.velHW),
+				(-a.velY + a.velHH) + (b.velY + b.velHH),
+				startTime, endTime, forCollide);
+	}
+	
+	//Time that two rects start or stop overlapping, from the overlap along each edge at
+	//  startTime and its rate of change, where the overlap along an edge is the edge
+	//  component of one rect plus the opposite edge component of the other.
+	//The rects overlap on the interval where every edge overlap is positive.
+	private static double rectRectTime(double overlapR, double overlapU, double overlapL, double overlapD,
+			double velR, double velU, double velL, double velD, double startTime, double endTime,
 			boolean forCollide)
 	{
+		if(!forCollide && (overlapR < 0.0 || overlapU < 0.0 || overlapL < 0.0 || overlapD < 0.0)) {
+			return startTime;
+		}
 		double overlapStart = 0.0;
+		overlapStart = Arith.max(overlapStart, entryTime(overlapR, velR));
+		overlapStart = Arith.max(overlapStart, entryTime(overlapU, velU));
+		overlapStart = Arith.max(overlapStart, entryTime(overlapL, velL));
+		overlapStart = Arith.max(overlapStart, entryTime(overlapD, velD));
 		double overlapEnd = 1.05*(endTime - startTime);
-		
-		for(int dir = 0; dir < 4; dir++) {
-			double overlap = a.getEdgeComp(dir, startTime) + b.getEdgeComp(Dir.opp(dir), startTime);
-			double overlapVel = a.getVelEdgeComp(dir) + b.getVelEdgeComp(Dir.opp(dir));
-			if(overlap < 0.0) {
-				if(!forCollide) return startTime;
-				if(overlapVel <= 0.0) return Double.POSITIVE_INFINITY;
-				else overlapStart = Arith.max(overlapStart, -overlap/overlapVel);
-			}
-			else if(overlapVel < 0.0) {
-				overlapEnd = Arith.min(overlapEnd, -overlap/overlapVel);
-			}
-			if(overlapStart >= overlapEnd) return forCollide ? Double.POSITIVE_INFINITY : startTime;
-		}
-		
+		overlapEnd = Arith.min(overlapEnd, exitTime(overlapR, velR));
+		overlapEnd = Arith.min(overlapEnd, exitTime(overlapU, velU));
+		overlapEnd = Arith.min(overlapEnd, exitTime(overlapL, velL));
+		overlapEnd = Arith.min(overlapEnd, exitTime(overlapD, velD));
+		if(overlapStart >= overlapEnd) return forCollide ? Double.POSITIVE_INFINITY : startTime;
 		return startTime + (forCollide ? overlapStart : overlapEnd);
 	}
 	
-	private static double circCircTime(HBCircle a, HBCircle b, double startTime, boolean forCollide)
+	//time from startTime until an edge overlap becomes positive, or 0 if it already is
+	private static double entryTime(double overlap, double overlapVel) {
+		if(!(overlap < 0.0)) return 0.0;
+		if(overlapVel <= 0.0) return Double.POSITIVE_INFINITY;
+		return -overlap/overlapVel;
+	}
+	
+	//time from startTime until a positive edge overlap stops being positive
+	private static double exitTime(double overlap, double overlapVel) {
+		if(!(overlap < 0.0) && overlapVel < 0.0) return -overlap/overlapVel;
+		return Double.POSITIVE_INFINITY;
+	}
+	
+	private static double circCircTime(HBCircle a, double aGrow, HBCircle b, double startTime,
+			boolean forCollide)
+	{
+		double aRad = (a.startRad + aGrow) + (startTime - a.startTime)*a.velRad;
+		return circCircTime(aRad + b.getRad(startTime),
+				a.getX(startTime) - b.getX(startTime), a.getY(startTime) - b.getY(startTime),
+				a.velRad + b.velRad, a.velX - b.velX, a.velY - b.velY, startTime, forCollide);
+	}
+	
+	//Time that two circles start or stop overlapping, from the sum of their radii and the
+	//  offset between their centers at startTime, and the rates of change of these values.
+	private static double circCircTime(double netRad, double distX, double distY,
+			double netRadVel, double distXVel, double distYVel, double startTime, boolean forCollide)
 	{
 		double sign = forCollide ? 1.0 : -1.0;
 		
-		double netRad = a.getRad(startTime) + b.getRad(startTime);
-		double distX = a.getX(startTime) - b.getX(startTime);
-		double distY = a.getY(startTime) - b.getY(startTime);
-		
 		double coeffC = sign*(netRad*netRad - distX*distX - distY*distY);
 		if(coeffC > 0.0) return startTime;
 		
-		double netRadVel = a.velRad + b.velRad;
-		double distXVel = a.velX - b.velX;
-		double distYVel = a.velY - b.velY;
-		
 		double coeffA = sign*(netRadVel*netRadVel - distXVel*distXVel - distYVel*distYVel);
 		double coeffB = sign*2.0*(netRad*netRadVel - distX*distXVel - distY*distYVel);
 		
@@ -156,73 +288,94 @@ final class CollisionTester {
 		else return Double.POSITIVE_INFINITY; //NOTE: handles NaN case
 	}
 	
-	private double rectCircCollideTime(HBRect a, HBCircle b, double startTime, double endTime)
+	private static double rectCircTime(HBRect a, HBCircle b, double bGrow, double startTime,
+			double endTime, boolean forCollide)
 	{
-//		if(!forCollide) {
-//			pair.init(a, b);
-//			double overlap = pair.getOverlap();
-//			pair.clear();
-//			if(overlap <= 0.0) return startTime;
-//		}
-		dummyRect.dummyMimicCircle(b);
-		double time = rectRectTime(a, dummyRect, startTime, endTime, true);
-		if(time >= endTime) return Double.POSITIVE_INFINITY;
-//		if(time >= endTime) {
-//			if(forCollide) return Double.POSITIVE_INFINITY;
-//			else time = endTime;
-//		}
-		
-		for(int dir = 0; dir < 2; dir++) {
-			double hiEdge = a.getEdgeComp(dir, time);
-			double loEdge = -a.getEdgeComp(Dir.opp(dir), time);
-			double bCoord = b.getPosComp(dir, time);
-			if(bCoord > hiEdge) {
-				dummyPoint.dummySetStartCoord(dir, hiEdge);
-				dummyPoint.dummySetVelCoord(dir, a.getVelEdgeComp(dir));
-			}
-			else if(bCoord < loEdge) {
-				dummyPoint.dummySetStartCoord(dir, loEdge);
-				dummyPoint.dummySetVelCoord(dir, -a.getVelEdgeComp(Dir.opp(dir)));
-			}
-			else return time;
+		double bRad = b.startRad + bGrow;
+		if(forCollide) {
+			return rectCircCollideTime(a.startX, a.startY, a.startHW, a.startHH,
+					a.velX, a.velY, a.velHW, a.velHH, a.startTime,
+					b.startX, b.startY, bRad, b.velX, b.velY, b.velRad, b.startTime,
+					startTime, endTime);
 		}
-		dummyPoint.startTime = time;
-		return circCircTime(dummyPoint, b, startTime, true);
-	}
-	
-	private double rectCircSeparateTime(HBRect a, HBCircle b, double startTime, double endTime) {
-		Normal normal = normal(a, b, startTime);
-		if(normal.overlap <= 0.0) return startTime;
-		mirror(a, dummyRect2, endTime);
-		mirror(b, dummyCircle, endTime);
-		dummyRect2.startTime = 0.0;
-		dummyCircle.startTime = 0.0;
-		double result = rectCircCollideTime(dummyRect2, dummyCircle, 0.0, endTime - startTime);
+		
+		//the time they stop overlapping is found as the time that they start overlapping
+		//  when going backwards in time from endTime
+		if(rectCircNormal(a, b, bGrow, startTime, null) <= 0.0) return startTime;
+		double aDt = endTime - a.startTime;
+		double bDt = endTime - b.startTime;
+		double result = rectCircCollideTime(a.startX + aDt*a.velX, a.startY + aDt*a.velY,
+				a.startHW + aDt*a.velHW, a.startHH + aDt*a.velHH,
+				-a.velX, -a.velY, -a.velHW, -a.velHH, 0.0,
+				b.startX + bDt*b.velX, b.startY + bDt*b.velY, bRad + bDt*b.velRad,
+				-b.velX, -b.velY, -b.velRad, 0.0,
+				0.0, endTime - startTime);
 		return Arith.max(startTime, endTime - result);
 	}
 	
-	private static void mirror(HBRect original, HBRect mirror, double endTime) {
-		mirrorPos(original, mirror, endTime);
-		mirror.startHW = original.getHW(endTime);
-		mirror.startHH = original.getHH(endTime);
-		mirror.velHW = -original.velHW;
-		mirror.velHH = -original.velHH;
-	}
-	
-	private static void mirror(HBCircle original, HBCircle mirror, double endTime) {
-		mirrorPos(original, mirror, endTime);
-		mirror.startRad = original.getRad(endTime);
-		mirror.velRad = -original.velRad;
+	//Time that a rect and a circle start overlapping, from the position, half-dimensions
+	//  (or radius) and velocities of each at its own start time.
+	//This is the time that the rect overlaps the bounding square of the circle if the center
+	//  of the circle is then beside the rect, or else the time that the nearest corner of the
+	//  rect, moving with the rect, starts overlapping the circle.
+	private static double rectCircCollideTime(double aX, double aY, double aHW, double aHH,
+			double aVelX, double aVelY, double aVelHW, double aVelHH, double aStartTime,
+			double bX, double bY, double bRad, double bVelX, double bVelY, double bVelRad,
+			double bStartTime, double startTime, double endTime)
+	{
+		double aDt = startTime - aStartTime;
+		double bDt = startTime - bStartTime;
+		double time = rectRectTime(
+				edge(aX, aHW, aVelX, aVelHW, aDt) + edge(-bX, bRad, -bVelX, bVelRad, bDt),
+				edge(aY, aHH, aVelY, aVelHH, aDt) + edge(-bY, bRad, -bVelY, bVelRad, bDt),
+				edge(-aX, aHW, -aVelX, aVelHW, aDt) + edge(bX, bRad, bVelX, bVelRad, bDt),
+				edge(-aY, aHH, -aVelY, aVelHH, aDt) + edge(bY, bRad, bVelY, bVelRad, bDt),
+				(aVelX + aVelHW) + (-bVelX + bVelRad),
+				(aVelY + aVelHH) + (-bVelY + bVelRad),
+				(-aVelX + aVelHW) + (bVelX + bVelRad),
+				(-aVelY + aVelHH) + (bVelY + bVelRad),
+				startTime, endTime, true);
+		if(time >= endTime) return Double.POSITIVE_INFINITY;
+		
+		double aCornerDt = time - aStartTime;
+		double bCornerDt = time - bStartTime;
+		double cornerX, cornerVelX, cornerY, cornerVelY;
+		double hiX = edge(aX, aHW, aVelX, aVelHW, aCornerDt);
+		double loX = -edge(-aX, aHW, -aVelX, aVelHW, aCornerDt);
+		double coordX = bX + bCornerDt*bVelX;
+		if(coordX > hiX) {
+			cornerX = hiX;
+			cornerVelX = aVelX + aVelHW;
+		}
+		else if(coordX < loX) {
+			cornerX = loX;
+			cornerVelX = -(-aVelX + aVelHW);
+		}
+		else return time;
+		double hiY = edge(aY, aHH, aVelY, aVelHH, aCornerDt);
+		double loY = -edge(-aY, aHH, -aVelY, aVelHH, aCornerDt);
+		double coordY = bY + bCornerDt*bVelY;
+		if(coordY > hiY) {
+			cornerY = hiY;
+			cornerVelY = aVelY + aVelHH;
+		}
+		else if(coordY < loY) {
+			cornerY = loY;
+			cornerVelY = -(-aVelY + aVelHH);
+		}
+		else return time;
+		
+		double cornerDt = startTime - time;
+		return circCircTime(bRad + bDt*bVelRad,
+				(cornerX + cornerDt*cornerVelX) - (bX + bDt*bVelX),
+				(cornerY + cornerDt*cornerVelY) - (bY + bDt*bVelY),
+				bVelRad, cornerVelX - bVelX, cornerVelY - bVelY, startTime, true);
 	}
 	
-	private static void mirrorPos(HBPositioned original, HBPositioned mirror, double endTime) {
-		mirror.startX = original.getX(endTime);
-		mirror.startY = original.getY(endTime);
-		mirror.velX = -original.velX;
-		mirror.velY = -original.velY;
-	}
+	//The normal functions return the overlap of the two HitBoxes,
+	//  and also store the normal in result if it is not null.
 	
-	private Normal rectRectNormal(HBRect src, HBRect dst, double time) {
+	private static double rectRectNormal(HBRect src, HBRect dst, double time, Normal result) {
 		int minDir = 0;
 		double overlap = Double.POSITIVE_INFINITY;
 		for(int dir = 0; dir < 4; dir++) {
@@ -233,45 +386,84 @@ final class CollisionTester {
 				minDir = dir;
 			}
 		}
-		normal.x = Dir.x(minDir);
-		normal.y = Dir.y(minDir);
-		normal.overlap = overlap;
-		return normal;
+		if(result != null) {
+			result.x = Dir.x(minDir);
+			result.y = Dir.y(minDir);
+			result.overlap = overlap;
+		}
+		return overlap;
+	}
+	
+	private static double circCircNormal(HBCircle src, HBCircle dst, double time, Normal result) {
+		return circCircNormal(dst.getX(time) - src.getX(time), dst.getY(time) - src.getY(time),
+				src.getRad(time) + dst.getRad(time), result);
 	}
 	
-	private Normal circCircNormal(HBCircle src, HBCircle dst, double time) {
-		double nx = dst.getX(time) - src.getX(time);
-		double ny = dst.getY(time) - src.getY(time);
+	//normal between two circles, from the offset between their centers and the sum of their radii
+	private static double circCircNormal(double nx, double ny, double netRad, Normal result) {
 		double dist = Math.sqrt(nx*nx + ny*ny);
-		if(dist == 0.0) {
-			nx = 1.0;
-			ny = 0.0;
-		}
-		else {//NOTE: if dist != 0.0, dist is at least Math.sqrt(Double.MIN_VALUE)
-			double invNMag = 1.0/dist;
-			nx *= invNMag;
-			ny *= invNMag;
+		if(result != null) {
+			if(dist == 0.0) {
+				nx = 1.0;
+				ny = 0.0;
+			}
+			else {//NOTE: if dist != 0.0, dist is at least Math.sqrt(Double.MIN_VALUE)
+				double invNMag = 1.0/dist;
+				nx *= invNMag;
+				ny *= invNMag;
+			}
+			result.x = nx;
+			result.y = ny;
+			result.overlap = netRad - dist;
 		}
-		normal.x = nx;
-		normal.y = ny;
-		normal.overlap = src.getRad(time) + dst.getRad(time) - dist;
-		return normal;
+		return netRad - dist;
 	}
 	
-	private Normal rectCircNormal(HBRect src, HBCircle dst, double time) {
+	//normal from a rect to a circle whose radius is dstGrow larger than it actually is:
+	//  from the nearest corner of the rect if the center of the circle is beyond one, otherwise
+	//  as if the circle were its bounding square
+	private static double rectCircNormal(HBRect src, HBCircle dst, double dstGrow, double time,
+			Normal result)
+	{
+		double dstStartRad = dst.startRad + dstGrow;
+		double cornerX = 0.0, cornerY = 0.0;
 		for(int dir = 0; dir < 2; dir++) {
 			double dstCoord = dst.getPosComp(dir, time);
 			double srcHi = src.getEdgeComp(dir, time);
 			double srcLo = -src.getEdgeComp(Dir.opp(dir), time);
-			if(dstCoord > srcHi) dummyPoint.dummySetStartCoord(dir, srcHi);
-			else if(dstCoord < srcLo) dummyPoint.dummySetStartCoord(dir, srcLo);
-			else {
-				dummyRect.dummyMimicCircle(dst);
-				return rectRectNormal(src, dummyRect, time);
+			double corner;
+			if(dstCoord > srcHi) corner = srcHi;
+			else if(dstCoord < srcLo) corner = srcLo;
+			else return rectSquareNormal(src, dst, dstStartRad, time, result);
+			if(dir == Dir.R) cornerX = corner;
+			else cornerY = corner;
+		}
+		double dstRad = dstStartRad + (time - dst.startTime)*dst.velRad;
+		return circCircNormal(dst.getX(time) - cornerX, dst.getY(time) - cornerY, dstRad, result);
+	}
+	
+	//rectRectNormal between a rect and the bounding square of a circle,
+	//  where the circle has radius dstStartRad at its start time
+	private static double rectSquareNormal(HBRect src, HBCircle dst, double dstStartRad, double time,
+			Normal result)
+	{
+		double dt = time - dst.startTime;
+		int minDir = 0;
+		double overlap = Double.POSITIVE_INFINITY;
+		for(int dir = 0; dir < 4; dir++) {
+			int opp = Dir.opp(dir);
+			double testOverlap = src.getEdgeComp(dir, time)
+					+ edge(dst.getStartPosComp(opp), dstStartRad, dst.getVelComp(opp), dst.velRad, dt);
+			if(testOverlap < overlap) {
+				overlap = testOverlap;
+				minDir = dir;
 			}
 		}
-		dummyPoint.velX = 0.0;
-		dummyPoint.velY = 0.0;
-		return circCircNormal(dummyPoint, dst, time);
+		if(result != null) {
+			result.x = Dir.x(minDir);
+			result.y = Dir.y(minDir);
+			result.overlap = overlap;
+		}
+		return overlap;
 	}
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+//4-ary min-heap of event ids.  The time and sequence number of each entry are
+//  copied into arrays parallel to the heap, so sifting only compares primitives
+//  stored next to each other.  The heap position of each event is recorded
+//  so that an arbitrary event can be removed in O(log n) time.
+final class EventHeap implements EventQueue {
+	private final static int ARITY = 4;
+
+	private final EventStore store;
+	private int[] events = new int[64];
+	private double[] times = new double[64];
+	private int[] seqs = new int[64];
+	private int[] positions = new int[0];
+	private int size = 0;
+
+	EventHeap(EventStore store) {
+		this.store = store;
+	}
+
+	@Override public int size() {return size;}
+
+	@Override
+	public void add(int event) {
+		if(size == events.length) {
+			events = EventStore.copy(events, 2*size);
+			times = EventStore.copy(times, 2*size);
+			seqs = EventStore.copy(seqs, 2*size);
+		}
+		if(event >= positions.length) {
+			positions = EventStore.copy(positions, Math.max(2*positions.length, event + 1));
+		}
+		size++;
+		siftUp(size - 1, event, store.time[event], store.seq[event]);
+	}
+
+	@Override
+	public int peek() {
+		return (size == 0) ? -1 : events[0];
+	}
+
+	@Override
+	public int poll() {
+		if(size == 0) return -1;
+		int result = events[0];
+		removeAt(0);
+		return result;
+	}
+
+	@Override
+	public void remove(int event) {
+		int index = positions[event];
+		if(index >= size || events[index] != event) throw new RuntimeException();
+		removeAt(index);
+	}
+
+	private void removeAt(int index) {
+		size--;
+		if(index == size) return;
+		int event = events[size];
+		double time = times[size];
+		int seq = seqs[size];
+		if(index > 0 && precedes(time, seq, (index - 1)/ARITY)) siftUp(index, event, time, seq);
+		else siftDown(index, event, time, seq);
+	}
+
+	//whether the given time and sequence number come before the entry at index
+	private boolean precedes(double time, int seq, int index) {
+		return precedes(time, seq, times[index], seqs[index]);
+	}
+
+	private void siftUp(int index, int event, double time, int seq) {
+		while(index > 0) {
+			int parent = (index - 1)/ARITY;
+			if(!precedes(time, seq, parent)) break;
+			move(parent, index);
+			index = parent;
+		}
+		place(index, event, time, seq);
+	}
+
+	private void siftDown(int index, int event, double time, int seq) {
+		while(true) {
+			int firstChild = ARITY*index + 1;
+			if(firstChild >= size) break;
+			int lastChild = Math.min(firstChild + ARITY, size);
+			int minChild = firstChild;
+			for(int child = firstChild + 1; child < lastChild; child++) {
+				if(precedes(times[child], seqs[child], minChild)) minChild = child;
+			}
+			if(!precedes(times[minChild], seqs[minChild], time, seq)) break;
+			move(minChild, index);
+			index = minChild;
+		}
+		place(index, event, time, seq);
+	}
+
+	private static boolean precedes(double time, int seq, double otherTime, int otherSeq) {
+		return time < otherTime || (time == otherTime && seq - otherSeq < 0);
+	}
+
+	private void move(int from, int to) {
+		int event = events[from];
+		events[to] = event;
+		times[to] = times[from];
+		seqs[to] = seqs[from];
+		positions[event] = to;
+	}
+
+	private void place(int index, int event, double time, int seq) {
+		events[index] = event;
+		times[index] = time;
+		seqs[index] = seq;
+		positions[event] = index;
+	}
+}
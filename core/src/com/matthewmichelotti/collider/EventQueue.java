@@ -16,17 +16,12 @@
 
 package com.matthewmichelotti.collider;
 
-abstract class FunctionEvent implements Comparable<FunctionEvent> {
-	double time;
-	int id;
-	
-	FunctionEvent() {}
-	
-	abstract void resolve(Collider collider);
-	
-	@Override public final int compareTo(FunctionEvent o) {
-		if(time > o.time) return 1;
-		if(time == o.time) return id - o.id;
-		return -1;
-	}
+//priority queue of event ids from an EventStore, ordered by time and then by sequence number,
+//that also supports removing an arbitrary queued event
+interface EventQueue {
+	void add(int event);
+	int peek(); //returns -1 if empty
+	int poll(); //returns -1 if empty
+	void remove(int event);
+	int size();
 }
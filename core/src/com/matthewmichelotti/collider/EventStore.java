@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+//Stores the events of a Collider as parallel primitive arrays indexed by an int event id,
+//  so that no objects are allocated or referenced per event.
+//Each queued event is also a node in the pending event lists of the one or two
+//  HitBoxes it involves.  Node ids are 2*event + side, where side 0 is for HitBox A.
+final class EventStore {
+	final static byte COLLIDE = 0, SEPARATE = 1, REITERATE = 2, ENTER = 3;
+
+	double[] time;
+	int[] seq;
+	byte[] kind;
+	int[] hitBoxA, hitBoxB;
+	int[] changeIdA, changeIdB;
+
+	//only used for REITERATE events
+	double[] endTime, period;
+
+	private int[] prevNode, nextNode;
+
+	private int[] freeIds;
+	private int numFree = 0;
+	private int capacity = 0;
+
+	EventStore() {
+		grow(64);
+	}
+
+	int getNumInUse() {return capacity - numFree;}
+
+	int obtain() {
+		if(numFree == 0) grow(2*capacity);
+		numFree--;
+		return freeIds[numFree];
+	}
+
+	void free(int event) {
+		freeIds[numFree] = event;
+		numFree++;
+	}
+
+	void link(int event, int side, HitBox hitBox) {
+		int node = 2*event + side;
+		int head = hitBox.pendingEvents;
+		prevNode[node] = -1;
+		nextNode[node] = head;
+		if(head >= 0) prevNode[head] = node;
+		hitBox.pendingEvents = node;
+	}
+
+	//next node in the pending event list of a HitBox, or -1
+	int next(int node) {return nextNode[node];}
+
+	void unlink(int event, int side, HitBox hitBox) {
+		int node = 2*event + side;
+		int prev = prevNode[node], next = nextNode[node];
+		if(prev < 0) hitBox.pendingEvents = next;
+		else nextNode[prev] = next;
+		if(next >= 0) prevNode[next] = prev;
+	}
+
+	private void grow(int newCapacity) {
+		time = copy(time, newCapacity);
+		seq = copy(seq, newCapacity);
+		kind = copy(kind, newCapacity);
+		hitBoxA = copy(hitBoxA, newCapacity);
+		hitBoxB = copy(hitBoxB, newCapacity);
+		changeIdA = copy(changeIdA, newCapacity);
+		changeIdB = copy(changeIdB, newCapacity);
+		endTime = copy(endTime, newCapacity);
+		period = copy(period, newCapacity);
+		prevNode = copy(prevNode, 2*newCapacity);
+		nextNode = copy(nextNode, 2*newCapacity);
+		freeIds = copy(freeIds, newCapacity);
+		for(int event = newCapacity - 1; event >= capacity; event--) {
+			freeIds[numFree] = event;
+			numFree++;
+		}
+		capacity = newCapacity;
+	}
+
+	static double[] copy(double[] arr, int length) {
+		double[] result = new double[length];
+		if(arr != null) System.arraycopy(arr, 0, result, 0, Math.min(arr.length, length));
+		return result;
+	}
+
+	static int[] copy(int[] arr, int length) {
+		int[] result = new int[length];
+		if(arr != null) System.arraycopy(arr, 0, result, 0, Math.min(arr.length, length));
+		return result;
+	}
+
+	static byte[] copy(byte[] arr, int length) {
+		byte[] result = new byte[length];
+		if(arr != null) System.arraycopy(arr, 0, result, 0, Math.min(arr.length, length));
+		return result;
+	}
+}
@@ -19,108 +19,247 @@ package com.matthewmichelotti.collider;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
-final class Field {
-	private SetPool<HitBox> setPool = new SetPool<HitBox>();
-	private LongMap<Object> data;
-	private double cellWidth;
+//Broadphase of grid cells, kept in a Grid.
+//With ColliderOpts.adaptiveCellWidth, Field estimates the cost of a query at other cell
+//  widths from the sizes of HitBoxes and the number of candidates returned per query.
+//  When another width is much cheaper, a new Grid is made and HitBoxes are moved to it a
+//  few at a time, each time a HitBox is added.  Until that finishes, queries look in both
+//  grids, and the generation of an IntBox tells which grid it refers to.
+final class Field implements Broadphase {
+	//number of handles checked for migration each time a HitBox is added
+	private final static int MIGRATE_STEP = 8;
+	//number of queries between estimates of the best cell width
+	private final static int TUNE_QUERIES = 4096;
+	//relative costs of visiting a grid cell and of a candidate HitBox returned by a query
+	private final static double CELL_COST = 1.0, CANDIDATE_COST = 4.0;
+	//the grid is only rebuilt for a width at least this factor away from the current width
+	private final static double REBUILD_FACTOR = 2.0;
+	//largest factor between the cell width and ColliderOpts.cellWidth
+	private final static double MAX_WIDTH_FACTOR = 8.0;
 	
-	private int numEntries = 0;
+	private final Collider collider;
+	private CellSlab slab = new CellSlab();
+	private Grid grid;
+	private Grid oldGrid; //null unless HitBoxes are being moved to grid
 	
-	private IntBox.Iterator boxIter = new IntBox.Iterator();
-	private IntBox.DiffIterator diffIter = new IntBox.DiffIterator();
+	//generation of the Grid holding the entries of each handle, or -1 if none
+	private int[] gridOf = new int[0];
+	private int migrateHandle;
+	
+	private final boolean adaptive;
+	private final double minCellWidth, maxCellWidth;
+	private int numRebuilds = 0;
+	private int layoutVersion = 0;
+	private int numQueries = 0;
+	private long numCandidates = 0;
+	private int numSizes = 0;
+	private double sizeSum = 0.0;
+	
+	private IntBox placeBox = new IntBox();
 	
 	private HitBoxIter iter = new HitBoxIter();
+	private OversizeIter oversizeIter = new OversizeIter();
+	
+	Field(ColliderOpts opts, Collider collider) {
+		this.collider = collider;
+		grid = new Grid(opts, slab);
+		adaptive = opts.adaptiveCellWidth;
+		minCellWidth = opts.cellWidth/MAX_WIDTH_FACTOR;
+		maxCellWidth = opts.cellWidth*MAX_WIDTH_FACTOR;
+	}
 	
-	Field(ColliderOpts opts) {
-		if(opts.cellWidth <= 0.0) throw new IllegalArgumentException();
-		cellWidth = opts.cellWidth;
-		data = new LongMap<Object>();
+	@Override
+	public int getNumEntries() {
+		int numEntries = grid.getNumEntries();
+		if(oldGrid != null) numEntries += oldGrid.getNumEntries();
+		return numEntries;
 	}
 	
-	int getNumEntries() {return numEntries;}
+	@Override public double getCellWidth() {return grid.cellWidth;}
+	@Override public int getNumRebuilds() {return numRebuilds;}
+	@Override public int getLayoutVersion() {return layoutVersion;}
 	
-	void remove(HitBox hitBox, int group, IntBox oldBox, IntBox newBox) {
-		if(group < 0) return;
-		Int2DIterator iter = iterator(oldBox, newBox);
-		for(; !iter.isDone(); iter.next()) {
-			removeFromCell(hitBox, iter.getX(), iter.getY(), group);
+	@Override
+	public void log() {
+		if(adaptive) System.out.println(" cell width: " + grid.cellWidth + " (rebuilds: " + numRebuilds + ")");
+		grid.log(" ");
+		if(oldGrid != null) {
+			System.out.println(" migrating from cell width: " + oldGrid.cellWidth);
+			oldGrid.log(" old ");
 		}
 	}
+
+	@Override
+	public void remove(HitBox hitBox, int group, IntBox oldBox, IntBox newBox) {
+		if(group < 0) return;
+		Grid src = getGrid(oldBox.generation);
+		if(newBox != null && newBox.generation != oldBox.generation) newBox = null;
+		if(src != grid) newBox = null;
+		src.remove(hitBox, group, oldBox, newBox);
+		if(newBox == null) gridOf[hitBox.handle] = -1;
+	}
 	
-	void add(HitBox hitBox, int group, IntBox oldBox, IntBox newBox) {
+	@Override
+	public void add(HitBox hitBox, int group, IntBox oldBox, IntBox newBox) {
 		if(group < 0) return;
-		Int2DIterator iter = iterator(newBox, oldBox);
-		for(; !iter.isDone(); iter.next()) {
-			addToCell(hitBox, iter.getX(), iter.getY(), group);
+		if(oldGrid != null) layoutVersion++;
+		if(newBox.generation != grid.generation) {
+			grid.getIndexBounds(hitBox, placeBox);
+			newBox = placeBox;
+			oldBox = null;
+		}
+		if(oldBox != null && oldBox.generation != grid.generation) oldBox = null;
+		grid.add(hitBox, group, oldBox, newBox);
+		int handle = hitBox.handle;
+		if(handle >= gridOf.length) {
+			int length = Math.max(2*gridOf.length, handle + 1);
+			int oldLength = gridOf.length;
+			gridOf = EventStore.copy(gridOf, length);
+			for(int i = oldLength; i < length; i++) gridOf[i] = -1;
 		}
+		gridOf[handle] = grid.generation;
+		if(oldGrid != null) migrate();
+		else if(adaptive) sampleSize(hitBox);
 	}
 	
 	//NOTE: should iterate to completion
-	Iterable<HitBox> iterator(IntBox region, int[] groups, int testId) {
+	@Override
+	public Iterable<HitBox> iterator(IntBox region, int[] groups, int testId) {
 		iter.init(region, groups, testId);
 		return iter;
 	}
 	
-	void getIndexBounds(HitBox hitBox, IntBox bounds) {
-		bounds.l = Arith.floor(-hitBox.getBoundEdgeComp(Dir.L)/cellWidth);
-		bounds.b = Arith.floor(-hitBox.getBoundEdgeComp(Dir.D)/cellWidth);
-		bounds.r = Arith.max(bounds.l, Arith.ceil(hitBox.getBoundEdgeComp(Dir.R)/cellWidth) - 1);
-		bounds.t = Arith.max(bounds.b, Arith.ceil(hitBox.getBoundEdgeComp(Dir.U)/cellWidth) - 1);
+	//NOTE: should iterate to completion
+	@Override
+	public Iterable<HitBox> oversizeIterator(int[] groups, int testId) {
+		oversizeIter.init(groups, testId);
+		return oversizeIter;
 	}
 	
-	double getGridPeriod(HitBox hitBox) {
-		double speed = hitBox.getMaxBoundEdgeVel();
-		if(speed <= 0.0) return Double.POSITIVE_INFINITY;
-		else return cellWidth/speed;
+	@Override
+	public void getIndexBounds(HitBox hitBox, IntBox bounds) {
+		gridOf(hitBox).getIndexBounds(hitBox, bounds);
 	}
 	
-	private void addToCell(HitBox hitBox, int x, int y, int group) {
-		long key = getKey(x, y, group);
-		Object oldSetObj = data.get(key);
-		Object newSetObj = setPool.add(oldSetObj, hitBox);
-		if(!setPool.wasSuccessful()) throw new RuntimeException();
-		if(newSetObj != oldSetObj) data.put(key, newSetObj);
-		numEntries++;
+	@Override
+	public void getQueryBounds(HitBox hitBox, IntBox bounds) {
+		gridOf(hitBox).getQueryBounds(hitBox, bounds);
 	}
-
-	private void removeFromCell(HitBox hitBox, int x, int y, int group) {
-		long key = getKey(x, y, group);
-		Object oldSetObj = data.get(key);
-		Object newSetObj = setPool.remove(oldSetObj, hitBox);
-		if(!setPool.wasSuccessful()) throw new RuntimeException();
-		if(newSetObj == null) data.remove(key);
-		else if(newSetObj != oldSetObj) data.put(key, newSetObj);
-		numEntries--;
+	
+	@Override
+	public double getGridPeriod(HitBox hitBox) {
+		return grid.getGridPeriod(hitBox);
+	}
+	
+	@Override
+	public double getCellWidth(HitBox hitBox) {
+		return gridOf(hitBox).getCellWidth(hitBox);
+	}
+	
+	//grid that holds the entries of a HitBox, or that a new HitBox will be added to
+	private Grid gridOf(HitBox hitBox) {
+		int handle = hitBox.handle;
+		if(oldGrid != null && handle < gridOf.length && gridOf[handle] == oldGrid.generation) return oldGrid;
+		return grid;
 	}
-
-	private final static long PRIME = 160481219; //NOTE: PRIME*PRIME*SMALL_PRIME < 2^63
-	private final static long SMALL_PRIME = 263; //NOTE: SMALL_PRIME > HitBox.NUM_GROUPS
-	private final static int MAX_INDEX = (int)(PRIME/2 - 1);
 	
-	private static long getKey(int x, int y, int group) {
-		//this key is used because, at the time of writing, the LongMap in
-		//LibGDX just uses the lower bits of the key as the first hash function
-		if(x > MAX_INDEX || x < -MAX_INDEX) throw new RuntimeException();
-		if(y > MAX_INDEX || y < -MAX_INDEX) throw new RuntimeException();
-		if(group >= SMALL_PRIME || group < 0) throw new RuntimeException();
-		return group + (SMALL_PRIME*x + PRIME*y);
-//		return ((x & 0xFFFF0000L) << 32) | ((y & 0xFFFFFFFFL) << 16) | (x & 0xFFFFL);
+	private Grid getGrid(int generation) {
+		if(generation == grid.generation) return grid;
+		if(oldGrid != null && generation == oldGrid.generation) return oldGrid;
+		throw new RuntimeException();
 	}
 	
-	private Int2DIterator iterator(IntBox box, IntBox subBox) {
-		if(subBox == null) {
-			boxIter.init(box);
-			return boxIter;
+	//moves the entries of a few HitBoxes from oldGrid to grid
+	private void migrate() {
+		int end = Math.min(gridOf.length, migrateHandle + MIGRATE_STEP);
+		for(; migrateHandle < end; migrateHandle++) {
+			if(gridOf[migrateHandle] != oldGrid.generation) continue;
+			HitBox hitBox = collider.getHitBox(migrateHandle);
+			//bounds of a HitBox altered during a batch are not current until it is re-added
+			if(hitBox.batchIndex >= 0) return;
+			int group = hitBox.getGroup();
+			oldGrid.getIndexBounds(hitBox, placeBox);
+			oldGrid.remove(hitBox, group, placeBox, null);
+			grid.getIndexBounds(hitBox, placeBox);
+			grid.add(hitBox, group, null, placeBox);
+			gridOf[migrateHandle] = grid.generation;
 		}
-		else {
-			diffIter.init(box, subBox);
-			return diffIter;
+		if(migrateHandle < gridOf.length) return;
+		if(oldGrid.getNumEntries() != 0 || oldGrid.hasOversize()) throw new RuntimeException();
+		oldGrid = null;
+		numQueries = 0;
+		numCandidates = 0;
+	}
+	
+	private void sampleSize(HitBox hitBox) {
+		double width = hitBox.getBoundEdgeComp(Dir.R) + hitBox.getBoundEdgeComp(Dir.L);
+		double height = hitBox.getBoundEdgeComp(Dir.U) + hitBox.getBoundEdgeComp(Dir.D);
+		sizeSum += .5*(width + height);
+		numSizes++;
+		if(numQueries >= TUNE_QUERIES) tune();
+	}
+	
+	//Estimates the cost of a query for cell widths in steps of sqrt(2) around the current width,
+	//  and starts a rebuild if the cheapest one is far enough from the current width.
+	//For HitBoxes of average swept size s, a query at width w visits about (s/w + 1)^2 cells,
+	//  and returns a number of candidates proportional to (s + w)^2.
+	private void tune() {
+		double s = sizeSum/numSizes;
+		double w0 = grid.cellWidth;
+		double candidates = numCandidates/(double)numQueries;
+		numQueries = 0;
+		numCandidates = 0;
+		numSizes = 0;
+		sizeSum = 0.0;
+		double bestWidth = w0;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for(int k = -4; k <= 4; k++) {
+			double w = w0*Math.pow(2.0, .5*k);
+			if(w < minCellWidth || w > maxCellWidth) continue;
+			double cells = s/w + 1.0;
+			double ratio = (s + w)/(s + w0);
+			double cost = CELL_COST*cells*cells + CANDIDATE_COST*candidates*ratio*ratio;
+			if(cost < bestCost) {
+				bestCost = cost;
+				bestWidth = w;
+			}
 		}
+		if(bestWidth < REBUILD_FACTOR*w0 && bestWidth > w0/REBUILD_FACTOR) return;
+		oldGrid = grid;
+		grid = new Grid(oldGrid, bestWidth);
+		migrateHandle = 0;
+		numRebuilds++;
+		layoutVersion++;
+	}
+	
+	//converts a region given for one grid to the level 0 cells of another grid
+	//  covering the same area, rounding outward
+	private static void rescale(IntBox src, double srcWidth, Grid dstGrid, IntBox dst) {
+		if(src.generation == dstGrid.generation) {
+			Grid.convert(src, 0, dst);
+			return;
+		}
+		double scale = srcWidth*(1 << src.level)/dstGrid.cellWidth;
+		dst.l = Arith.floor(src.l*scale) - 1;
+		dst.b = Arith.floor(src.b*scale) - 1;
+		dst.r = Arith.ceil((src.r + 1.0)*scale);
+		dst.t = Arith.ceil((src.t + 1.0)*scale);
+		dst.level = 0;
+		dst.generation = dstGrid.generation;
 	}
 	
 	private class HitBoxIter implements Iterator<HitBox>, Iterable<HitBox> {
 		private final IntBox.Iterator boxIter = new IntBox.Iterator();
-		private final SetPool.SetIterator<HitBox> cellIter = new SetPool.SetIterator<HitBox>();
+		private final Grid[] grids = new Grid[2];
+		private final IntBox[] regions = {new IntBox(), new IntBox()}; //level 0 region of each grid
+		private final IntBox levelRegion = new IntBox();
+		private final IntBox candidateBounds = new IntBox();
+		private int numGrids;
+		private int gridIndex;
+		private int level;
+		private int scanHandle; //-1 unless HitBoxes are being scanned instead of grid cells
+		private int cellDir; //directory block of the current cell
+		private int cellIndex, cellEnd;
 		private int[] groups;
 		private int groupIndex;
 		private HitBox next;
@@ -129,19 +268,33 @@ final class Field {
 		private void init(IntBox region, int[] groups, int testId) {
 			clear();
 			if(groups.length == 0) return;
-			boxIter.init(region);
-			if(boxIter.isDone()) return;
-			
+			numQueries++;
+			double regionWidth = getGrid(region.generation).cellWidth;
+			numGrids = 0;
+			grids[numGrids++] = grid;
+			if(oldGrid != null) grids[numGrids++] = oldGrid;
+			for(int i = 0; i < numGrids; i++) rescale(region, regionWidth, grids[i], regions[i]);
 			this.testId = testId;
 			this.groups = groups;
-			initCellIter();
+			if(getCellCost() > collider.getNumHandles()) {
+				scanHandle = 0;
+				scanNext();
+				return;
+			}
+			gridIndex = 0;
+			level = -1;
+			if(!nextLevel()) {
+				clear();
+				return;
+			}
 			searchNext();
 		}
 		
 		private void searchNext() {
 			while(true) {
-				while(cellIter.hasNext()) {
-					next = cellIter.next();
+				while(cellIndex < cellEnd) {
+					next = collider.getHitBox(slab.data[cellIndex]);
+					cellIndex++;
 					if(next.testMark(testId)) return;
 				}
 				groupIndex++;
@@ -149,24 +302,166 @@ final class Field {
 					groupIndex = 0;
 					boxIter.next();
 					if(boxIter.isDone()) {
-						clear();
-						return;
+						if(!nextLevel()) {
+							clear();
+							return;
+						}
+						continue;
 					}
 				}
 				initCellIter();
 			}
 		}
 		
+		//number of cells that would be visited, or more if large
+		private long getCellCost() {
+			long cost = 0;
+			for(int i = 0; i < numGrids; i++) {
+				GridLevel[] levels = grids[i].levels;
+				for(int l = 0; l < levels.length; l++) {
+					if(!hasEntries(levels[l])) continue;
+					Grid.convert(regions[i], l, levelRegion);
+					cost += (levelRegion.r - (long)levelRegion.l + 1)*(levelRegion.t - (long)levelRegion.b + 1);
+					if(cost > Integer.MAX_VALUE) return cost*groups.length;
+				}
+			}
+			return cost*groups.length;
+		}
+		
+		//when the region covers more cells than there are HitBoxes, it is cheaper to
+		//  test the grid bounds of every HitBox against the region
+		private void scanNext() {
+			int numHandles = collider.getNumHandles();
+			while(scanHandle < numHandles) {
+				HitBox hitBox = collider.getHitBox(scanHandle);
+				scanHandle++;
+				if(!hitBox.isInitialized() || hitBox.isStatic || !inGroups(hitBox.getGroup())) continue;
+				Grid candidateGrid = gridOf(hitBox);
+				candidateGrid.getIndexBounds(hitBox, candidateBounds);
+				if(candidateBounds.oversize) continue;
+				Grid.convert(candidateBounds, 0, candidateBounds);
+				IntBox region = regions[candidateGrid == grid ? 0 : 1];
+				if(candidateBounds.r < region.l || candidateBounds.l > region.r
+						|| candidateBounds.t < region.b || candidateBounds.b > region.t) continue;
+				if(hitBox.testMark(testId)) {
+					next = hitBox;
+					return;
+				}
+			}
+			clear();
+		}
+		
+		private boolean inGroups(int group) {
+			for(int g : groups) {
+				if(g == group) return true;
+			}
+			return false;
+		}
+		
+		//advances to the next level containing any of the groups, returning false if there is none
+		private boolean nextLevel() {
+			while(true) {
+				level++;
+				if(level >= grids[gridIndex].levels.length) {
+					gridIndex++;
+					if(gridIndex >= numGrids) return false;
+					level = 0;
+				}
+				if(!hasEntries(grids[gridIndex].levels[level])) continue;
+				Grid.convert(regions[gridIndex], level, levelRegion);
+				boxIter.init(levelRegion);
+				if(boxIter.isDone()) continue;
+				groupIndex = 0;
+				initCellIter();
+				return true;
+			}
+		}
+		
+		private boolean hasEntries(GridLevel gridLevel) {
+			for(int group : groups) {
+				if(gridLevel.getNumEntries(group) > 0) return true;
+			}
+			return false;
+		}
+		
 		private void initCellIter() {
-			long key = getKey(boxIter.getX(), boxIter.getY(), groups[groupIndex]);
-			cellIter.init(data.get(key));
+			if(groupIndex == 0) {
+				cellDir = grids[gridIndex].levels[level].getDir(boxIter.getX(), boxIter.getY());
+				//an empty cell has no groups, so move on to the next cell
+				if(cellDir < 0) groupIndex = groups.length - 1;
+			}
+			int block = slab.getValue(cellDir, groups[groupIndex]);
+			cellIndex = CellSlab.first(block);
+			cellEnd = cellIndex + slab.size(block);
 		}
 		
 		private void clear() {
-			cellIter.clear();
+			scanHandle = -1;
+			cellIndex = 0;
+			cellEnd = 0;
 			groups = null;
 			groupIndex = 0;
 			next = null;
+			grids[0] = null;
+			grids[1] = null;
+		}
+		
+		@Override
+		public HitBox next() {
+			if(next == null) throw new NoSuchElementException();
+			HitBox result = next;
+			numCandidates++;
+			if(scanHandle >= 0) scanNext();
+			else searchNext();
+			return result;
+		}
+		
+		@Override public Iterator<HitBox> iterator() {return this;}
+		@Override public boolean hasNext() {return next != null;}
+		@Override public void remove() {throw new UnsupportedOperationException();}
+	}
+	
+	private class OversizeIter implements Iterator<HitBox>, Iterable<HitBox> {
+		private int[] groups;
+		private int groupIndex;
+		private Grid iterGrid;
+		private int cellIndex, cellEnd;
+		private HitBox next;
+		private int testId;
+		
+		private void init(int[] groups, int testId) {
+			this.groups = groups;
+			this.testId = testId;
+			iterGrid = grid;
+			groupIndex = -1;
+			cellIndex = 0;
+			cellEnd = 0;
+			searchNext();
+		}
+		
+		private void searchNext() {
+			while(true) {
+				while(cellIndex < cellEnd) {
+					next = collider.getHitBox(slab.data[cellIndex]);
+					cellIndex++;
+					if(next.testMark(testId)) return;
+				}
+				groupIndex++;
+				if(groupIndex >= groups.length) {
+					if(iterGrid == grid && oldGrid != null) {
+						iterGrid = oldGrid;
+						groupIndex = -1;
+						continue;
+					}
+					iterGrid = null;
+					groups = null;
+					next = null;
+					return;
+				}
+				int block = iterGrid.oversizeBlocks[groups[groupIndex]];
+				cellIndex = CellSlab.first(block);
+				cellEnd = cellIndex + slab.size(block);
+			}
 		}
 		
 		@Override
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+//The cells of Field for one cell width: a GridLevel for each level of the grid,
+//  and a list of the oversize HitBoxes of each group.
+//Field keeps a second Grid while it moves HitBoxes over to a new cell width,
+//  and the generation number tells the two apart.
+final class Grid {
+	private final static int MAX_LEVELS = 16;
+
+	final int generation;
+	final double cellWidth;
+	final GridLevel[] levels;
+
+	//CellSlab blocks listing the oversize HitBoxes of each group
+	final int[] oversizeBlocks = new int[HitBox.NUM_GROUPS];
+
+	private final CellSlab slab;
+	private final int[] groupLevels;
+	private final long oversizeCells;
+	private final double margin;
+	private final double worldMinX, worldMinY, worldMaxX, worldMaxY;
+	
+	//with a margin, the cells that each handle was last added to, which are kept as long as
+	//  they cover its bounds; the level is -1 for a handle that is not in the cells of this grid
+	private int[] fatLevels = new int[0];
+	private int[] fatLs, fatBs, fatRs, fatTs;
+
+	private int numEntries = 0;
+
+	private IntBox.Iterator boxIter = new IntBox.Iterator();
+	private IntBox.DiffIterator diffIter = new IntBox.DiffIterator();
+
+	Grid(ColliderOpts opts, CellSlab slab) {
+		if(opts.cellWidth <= 0.0) throw new IllegalArgumentException();
+		int numLevels = Math.max(1, opts.gridLevels);
+		if(numLevels > MAX_LEVELS) throw new IllegalArgumentException();
+		if(opts.groupGridLevels != null) {
+			if(opts.groupGridLevels.length > HitBox.NUM_GROUPS) throw new IllegalArgumentException();
+			groupLevels = new int[HitBox.NUM_GROUPS];
+			for(int i = 0; i < groupLevels.length; i++) groupLevels[i] = -1;
+			for(int i = 0; i < opts.groupGridLevels.length; i++) {
+				int level = opts.groupGridLevels[i];
+				if(level < -1 || level >= numLevels) throw new IllegalArgumentException();
+				groupLevels[i] = level;
+			}
+		}
+		else {
+			groupLevels = null;
+		}
+		this.generation = 0;
+		this.cellWidth = opts.cellWidth;
+		this.slab = slab;
+		this.oversizeCells = (opts.oversizeCells > 0) ? opts.oversizeCells : Long.MAX_VALUE;
+		if(opts.gridMargin < 0.0) throw new IllegalArgumentException();
+		this.margin = opts.gridMargin;
+		this.worldMinX = opts.worldMinX;
+		this.worldMinY = opts.worldMinY;
+		this.worldMaxX = opts.worldMaxX;
+		this.worldMaxY = opts.worldMaxY;
+		this.levels = new GridLevel[numLevels];
+		initLevels();
+	}
+
+	//creates an empty grid with the same settings as prev but a different cell width
+	Grid(Grid prev, double cellWidth) {
+		this.generation = prev.generation + 1;
+		this.cellWidth = cellWidth;
+		this.slab = prev.slab;
+		this.groupLevels = prev.groupLevels;
+		this.oversizeCells = prev.oversizeCells;
+		this.margin = prev.margin;
+		this.worldMinX = prev.worldMinX;
+		this.worldMinY = prev.worldMinY;
+		this.worldMaxX = prev.worldMaxX;
+		this.worldMaxY = prev.worldMaxY;
+		this.levels = new GridLevel[prev.levels.length];
+		initLevels();
+	}
+
+	private void initLevels() {
+		for(int i = 0; i < oversizeBlocks.length; i++) oversizeBlocks[i] = -1;
+		IntBox denseBounds = null;
+		if(worldMaxX > worldMinX && worldMaxY > worldMinY) {
+			denseBounds = new IntBox();
+			denseBounds.l = Arith.floor(worldMinX/cellWidth);
+			denseBounds.b = Arith.floor(worldMinY/cellWidth);
+			denseBounds.r = Arith.ceil(worldMaxX/cellWidth) - 1;
+			denseBounds.t = Arith.ceil(worldMaxY/cellWidth) - 1;
+		}
+		for(int level = 0; level < levels.length; level++) {
+			IntBox levelBounds = null;
+			if(denseBounds != null) {
+				levelBounds = new IntBox();
+				convert(denseBounds, level, levelBounds);
+			}
+			levels[level] = new GridLevel(levelBounds);
+		}
+	}
+
+	int getNumEntries() {return numEntries;}
+
+	boolean hasOversize() {
+		for(int block : oversizeBlocks) {
+			if(block >= 0) return true;
+		}
+		return false;
+	}
+
+	void log(String indent) {
+		System.out.println(indent + "grid entries: " + numEntries);
+		for(int level = 0; level < levels.length; level++) {
+			CellMap cells = levels[level].cellMap;
+			String prefix = (levels.length == 1) ? indent : indent + "level " + level + " ";
+			System.out.println(prefix + "grid cells: " + cells.size() + " (load " + cells.getLoadFactor() + ")");
+			System.out.println(prefix + "cell probes: avg " + cells.getAvgProbeLength()
+					+ ", max " + cells.getMaxProbeLength());
+		}
+	}
+
+	void remove(HitBox hitBox, int group, IntBox oldBox, IntBox newBox) {
+		if(oldBox.oversize) {
+			if(newBox == null || !newBox.oversize) {
+				oversizeBlocks[group] = slab.remove(oversizeBlocks[group], hitBox.handle);
+			}
+			return;
+		}
+		if(newBox == null) forgetFat(hitBox.handle);
+		if(newBox != null && (newBox.oversize || newBox.level != oldBox.level)) newBox = null;
+		GridLevel level = levels[oldBox.level];
+		Int2DIterator iter = iterator(oldBox, newBox);
+		for(; !iter.isDone(); iter.next()) {
+			removeFromCell(hitBox, level, iter.getX(), iter.getY(), group);
+		}
+	}
+
+	void add(HitBox hitBox, int group, IntBox oldBox, IntBox newBox) {
+		if(newBox.oversize) {
+			if(oldBox == null || !oldBox.oversize) {
+				oversizeBlocks[group] = slab.add(oversizeBlocks[group], hitBox.handle);
+			}
+			forgetFat(hitBox.handle);
+			return;
+		}
+		if(oldBox != null && (oldBox.oversize || oldBox.level != newBox.level)) oldBox = null;
+		GridLevel level = levels[newBox.level];
+		Int2DIterator iter = iterator(newBox, oldBox);
+		for(; !iter.isDone(); iter.next()) {
+			addToCell(hitBox, level, iter.getX(), iter.getY(), group);
+		}
+		if(margin > 0.0) rememberFat(hitBox.handle, newBox);
+	}
+
+	//Cells that a HitBox is added to.  With a margin, these are the cells covering its bounds
+	//  enlarged by the margin on each side, and they stay the same as long as they still cover
+	//  its bounds, so that the cells do not change each time the HitBox is committed.
+	void getIndexBounds(HitBox hitBox, IntBox bounds) {
+		getQueryBounds(hitBox, bounds);
+		if(margin <= 0.0 || bounds.oversize) return;
+		int handle = hitBox.handle;
+		if(handle < fatLevels.length && fatLevels[handle] == bounds.level
+				&& fatLs[handle] <= bounds.l && fatBs[handle] <= bounds.b
+				&& fatRs[handle] >= bounds.r && fatTs[handle] >= bounds.t)
+		{
+			bounds.l = fatLs[handle];
+			bounds.b = fatBs[handle];
+			bounds.r = fatRs[handle];
+			bounds.t = fatTs[handle];
+			return;
+		}
+		getCells(hitBox, margin, bounds.level, bounds);
+	}
+	
+	//cells covering the bounds of a HitBox, without the margin
+	void getQueryBounds(HitBox hitBox, IntBox bounds) {
+		getCells(hitBox, 0.0, getLevel(hitBox), bounds);
+		bounds.oversize = (bounds.r - (long)bounds.l + 1)*(bounds.t - (long)bounds.b + 1) > oversizeCells;
+		bounds.generation = generation;
+	}
+	
+	//cells of a level covering the bounds of a HitBox enlarged by grow on each side
+	private void getCells(HitBox hitBox, double grow, int level, IntBox bounds) {
+		bounds.l = Arith.floor((-hitBox.getBoundEdgeComp(Dir.L) - grow)/cellWidth);
+		bounds.b = Arith.floor((-hitBox.getBoundEdgeComp(Dir.D) - grow)/cellWidth);
+		bounds.r = Arith.max(bounds.l, Arith.ceil((hitBox.getBoundEdgeComp(Dir.R) + grow)/cellWidth) - 1);
+		bounds.t = Arith.max(bounds.b, Arith.ceil((hitBox.getBoundEdgeComp(Dir.U) + grow)/cellWidth) - 1);
+		bounds.level = 0;
+		if(level > 0) convert(bounds, level, bounds);
+	}
+	
+	double getGridPeriod(HitBox hitBox) {
+		double speed = hitBox.maxBoundEdgeVel;
+		if(speed <= 0.0) return Double.POSITIVE_INFINITY;
+		else return getCellWidth(hitBox)/speed;
+	}
+	
+	double getCellWidth(HitBox hitBox) {
+		return cellWidth*(1 << getLevel(hitBox));
+	}
+
+	//level of the grid that a HitBox is stored in: the level for its group if specified,
+	//  otherwise the lowest level with cells at least as large as the HitBox currently is
+	private int getLevel(HitBox hitBox) {
+		if(levels.length == 1) return 0;
+		int group = hitBox.getGroup();
+		if(groupLevels != null && group >= 0 && groupLevels[group] >= 0) return groupLevels[group];
+		double size = getSize(hitBox);
+		int level = 0;
+		double levelWidth = cellWidth;
+		while(size > levelWidth && level < levels.length - 1) {
+			level++;
+			levelWidth *= 2.0;
+		}
+		return level;
+	}
+
+	//larger of the width and height of a HitBox at its start time, ignoring its motion
+	static double getSize(HitBox hitBox) {
+		double t = hitBox.startTime;
+		double width = hitBox.getBoundEdgeComp(Dir.R, t, t) + hitBox.getBoundEdgeComp(Dir.L, t, t);
+		double height = hitBox.getBoundEdgeComp(Dir.U, t, t) + hitBox.getBoundEdgeComp(Dir.D, t, t);
+		return Arith.max(width, height);
+	}
+
+	//converts cell index bounds to the cells of another level that cover the same region
+	static void convert(IntBox src, int level, IntBox dst) {
+		int shift = level - src.level;
+		if(shift >= 0) {
+			dst.l = src.l >> shift;
+			dst.b = src.b >> shift;
+			dst.r = src.r >> shift;
+			dst.t = src.t >> shift;
+		}
+		else {
+			shift = -shift;
+			dst.l = src.l << shift;
+			dst.b = src.b << shift;
+			dst.r = ((src.r + 1) << shift) - 1;
+			dst.t = ((src.t + 1) << shift) - 1;
+		}
+		dst.level = level;
+		dst.generation = src.generation;
+	}
+
+	private void rememberFat(int handle, IntBox box) {
+		if(handle >= fatLevels.length) {
+			int length = Math.max(2*fatLevels.length, handle + 1);
+			int oldLength = fatLevels.length;
+			fatLevels = EventStore.copy(fatLevels, length);
+			for(int i = oldLength; i < length; i++) fatLevels[i] = -1;
+			fatLs = EventStore.copy(fatLs, length);
+			fatBs = EventStore.copy(fatBs, length);
+			fatRs = EventStore.copy(fatRs, length);
+			fatTs = EventStore.copy(fatTs, length);
+		}
+		fatLevels[handle] = box.level;
+		fatLs[handle] = box.l;
+		fatBs[handle] = box.b;
+		fatRs[handle] = box.r;
+		fatTs[handle] = box.t;
+	}
+	
+	private void forgetFat(int handle) {
+		if(handle < fatLevels.length) fatLevels[handle] = -1;
+	}
+	
+	private void addToCell(HitBox hitBox, GridLevel level, int x, int y, int group) {
+		int dir = level.getDir(x, y);
+		int oldBlock = slab.getValue(dir, group);
+		int newBlock = slab.add(oldBlock, hitBox.handle);
+		if(newBlock != oldBlock) setBlock(level, x, y, dir, group, newBlock);
+		level.addEntries(group, 1);
+		numEntries++;
+	}
+
+	private void removeFromCell(HitBox hitBox, GridLevel level, int x, int y, int group) {
+		int dir = level.getDir(x, y);
+		int oldBlock = slab.getValue(dir, group);
+		int newBlock = slab.remove(oldBlock, hitBox.handle);
+		if(newBlock != oldBlock) setBlock(level, x, y, dir, group, newBlock);
+		level.addEntries(group, -1);
+		numEntries--;
+	}
+
+	//updates the directory of a cell with the new block of a group
+	private void setBlock(GridLevel level, int x, int y, int dir, int group, int block) {
+		int newDir = slab.putValue(dir, group, block);
+		if(newDir != dir) level.setDir(x, y, newDir);
+	}
+
+	private Int2DIterator iterator(IntBox box, IntBox subBox) {
+		if(subBox == null) {
+			boxIter.init(box);
+			return boxIter;
+		}
+		else {
+			diffIter.init(box, subBox);
+			return diffIter;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+//One level of the grid in Field, mapping each (x, y) cell to the CellSlab block holding
+//  its directory, which pairs each group present in the cell with the CellSlab block
+//  of handles of that group.  A query then looks up a cell once for all of its groups.
+//Cells within the world bounds, if any, are stored in a row-major array
+//  allocated on first use.  Other cells are stored in a CellMap.
+final class GridLevel {
+	final CellMap cellMap = new CellMap();
+	private final int[] numEntries = new int[HitBox.NUM_GROUPS];
+
+	private int[] denseCells;
+	private boolean dense;
+	private int denseMinX, denseMinY, denseWidth, denseHeight;
+
+	//denseBounds may be null if there are no world bounds
+	GridLevel(IntBox denseBounds) {
+		if(denseBounds == null) return;
+		long width = denseBounds.r - (long)denseBounds.l + 1;
+		long height = denseBounds.t - (long)denseBounds.b + 1;
+		if(width*height > Integer.MAX_VALUE) throw new IllegalArgumentException();
+		denseMinX = denseBounds.l;
+		denseMinY = denseBounds.b;
+		denseWidth = (int)width;
+		denseHeight = (int)height;
+		dense = true;
+	}
+
+	int getNumEntries(int group) {return numEntries[group];}
+
+	void addEntries(int group, int count) {numEntries[group] += count;}
+
+	//returns the directory block of a cell, or -1 if the cell is empty
+	int getDir(int x, int y) {
+		int index = denseIndex(x, y);
+		if(index < 0) return cellMap.get(CellMap.key(x, y));
+		return (denseCells == null) ? -1 : denseCells[index];
+	}
+
+	void setDir(int x, int y, int dir) {
+		int index = denseIndex(x, y);
+		if(index < 0) {
+			cellMap.put(CellMap.key(x, y), dir);
+			return;
+		}
+		if(denseCells == null) {
+			denseCells = new int[denseWidth*denseHeight];
+			for(int i = 0; i < denseCells.length; i++) denseCells[i] = -1;
+		}
+		denseCells[index] = dir;
+	}
+
+	//returns the index of (x, y) in the dense cell array, or -1 if outside of the world bounds
+	private int denseIndex(int x, int y) {
+		if(!dense) return -1;
+		int dx = x - denseMinX, dy = y - denseMinY;
+		if(dx < 0 || dx >= denseWidth || dy < 0 || dy >= denseHeight) return -1;
+		return dy*denseWidth + dx;
+	}
+}
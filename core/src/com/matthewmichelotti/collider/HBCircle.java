@@ -26,7 +26,7 @@ public final class HBCircle extends HBPositioned {
 	double velRad;
 	
 	HBCircle(Collider collider) {
-		super(collider);
+		super(collider, CIRCLE);
 	}
 
 	@Override
@@ -43,6 +43,12 @@ public final class HBCircle extends HBPositioned {
 		super.markTransitionStart();
 	}
 
+	void initCommitted(double x, double y, double velX, double velY, double diam, int group, double endTime) {
+		initCommitted(x, y, velX, velY, group, endTime);
+		this.startRad = .5*diam;
+		this.velRad = 0.0;
+	}
+
 	@Override
 	public void free() {
 		collider.free(this);
@@ -80,35 +86,4 @@ public final class HBCircle extends HBPositioned {
 	 * @return Velocity of the diameter.
 	 */
 	public double getVelDiam() {return 2*velRad;}
-	
-	double getStartEdgeComp(int edge) {
-		return getStartPosComp(edge) + startRad;
-	}
-	
-	double getVelEdgeComp(int edge) {
-		return getVelComp(edge) + velRad;
-	}
-
-	@Override
-	double getBoundEdgeComp(int edge, double startTime, double endTime) {
-		double base = getStartEdgeComp(edge);
-		double vel = getVelEdgeComp(edge);
-		double evalTime = (vel > 0.0) ? endTime : startTime;
-		return base + vel*(evalTime - this.startTime);
-	}
-
-	@Override
-	boolean isMoving() {
-		return velX != 0.0 || velY != 0.0 || velRad != 0.0;
-	}
-
-	@Override
-	double getMaxBoundEdgeVel() {
-		double vel = 0.0;
-		double absVelRad = Arith.abs(velRad);
-		for(int dir = 0; dir < 2; dir++) {
-			vel = Math.max(vel, Arith.abs(getVelComp(dir)) + absVelRad);
-		}
-		return vel;
-	}
 }
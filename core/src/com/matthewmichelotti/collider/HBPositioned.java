@@ -25,8 +25,8 @@ public abstract class HBPositioned extends HitBox {
 	double startX, startY;
 	double velX, velY;
 	
-	HBPositioned(Collider collider) {
-		super(collider);
+	HBPositioned(Collider collider, int shape) {
+		super(collider, shape);
 	}
 
 	@Override
@@ -38,6 +38,14 @@ public abstract class HBPositioned extends HitBox {
 		this.velY = 0.0;
 	}
 
+	final void initCommitted(double x, double y, double velX, double velY, int group, double endTime) {
+		initCommitted(group, endTime);
+		this.startX = x;
+		this.startY = y;
+		this.velX = velX;
+		this.velY = velY;
+	}
+
 	@Override
 	void markTransitionStart() {
 		double time = collider.getTime();
@@ -155,19 +163,66 @@ public abstract class HBPositioned extends HitBox {
 		return getStartPosComp(dir) + (time - startTime)*getVelComp(dir);
 	}
 	
-	final void dummySetStartCoord(int dir, double value) {
-		switch(dir) {
-		case Dir.R: startX = value; return;
-		case Dir.U: startY = value; return;
-		default: throw new IllegalArgumentException();
+	//half of the width or height along an edge at startTime,
+	//  which is the radius for a circle
+	final double getStartHDim(int dir) {
+		switch(shape) {
+		case RECT: return isHorizontal(dir) ? ((HBRect)this).startHW : ((HBRect)this).startHH;
+		case CIRCLE: return ((HBCircle)this).startRad;
+		default: throw new IllegalStateException();
+		}
+	}
+	
+	final double getVelHDim(int dir) {
+		switch(shape) {
+		case RECT: return isHorizontal(dir) ? ((HBRect)this).velHW : ((HBRect)this).velHH;
+		case CIRCLE: return ((HBCircle)this).velRad;
+		default: throw new IllegalStateException();
 		}
 	}
 	
-	final void dummySetVelCoord(int dir, double value) {
+	private static boolean isHorizontal(int dir) {
 		switch(dir) {
-		case Dir.R: velX = value; return;
-		case Dir.U: velY = value; return;
+		case Dir.R: case Dir.L: return true;
+		case Dir.U: case Dir.D: return false;
 		default: throw new IllegalArgumentException();
 		}
 	}
+	
+	//Edge components are the distance of each edge of the bounding box from the origin,
+	//  in the direction of that edge.  These are the same for each shape.
+	
+	final double getStartEdgeComp(int edge) {
+		return getStartPosComp(edge) + getStartHDim(edge);
+	}
+	
+	final double getVelEdgeComp(int edge) {
+		return getVelComp(edge) + getVelHDim(edge);
+	}
+	
+	final double getEdgeComp(int edge, double time) {
+		return getStartEdgeComp(edge) + (time - startTime)*getVelEdgeComp(edge);
+	}
+
+	@Override
+	final double getBoundEdgeComp(int edge, double startTime, double endTime) {
+		double base = getStartEdgeComp(edge);
+		double vel = getVelEdgeComp(edge);
+		double evalTime = (vel > 0.0) ? endTime : startTime;
+		return base + vel*(evalTime - this.startTime);
+	}
+
+	@Override
+	final boolean isMoving() {
+		return velX != 0.0 || velY != 0.0 || getVelHDim(Dir.R) != 0.0 || getVelHDim(Dir.U) != 0.0;
+	}
+
+	@Override
+	final double getMaxBoundEdgeVel() {
+		double vel = 0.0;
+		for(int dir = 0; dir < 2; dir++) {
+			vel = Math.max(vel, Arith.abs(getVelComp(dir)) + Arith.abs(getVelHDim(dir)));
+		}
+		return vel;
+	}
 }
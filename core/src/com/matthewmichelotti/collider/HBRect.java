@@ -26,7 +26,7 @@ public final class HBRect extends HBPositioned {
 	double velHW, velHH;
 	
 	HBRect(Collider collider) {
-		super(collider);
+		super(collider, RECT);
 	}
 
 	@Override
@@ -46,6 +46,16 @@ public final class HBRect extends HBPositioned {
 		super.markTransitionStart();
 	}
 
+	void initCommitted(double x, double y, double velX, double velY,
+			double width, double height, int group, double endTime)
+	{
+		initCommitted(x, y, velX, velY, group, endTime);
+		this.startHW = .5*width;
+		this.startHH = .5*height;
+		this.velHW = 0.0;
+		this.velHH = 0.0;
+	}
+
 	@Override
 	public void free() {
 		collider.free(this);
@@ -157,66 +167,4 @@ public final class HBRect extends HBPositioned {
 	 * @return Velocity of the height.
 	 */
 	public double getVelHeight() {return 2*velHH;}
-	
-	double getStartHDim(int dir) {
-		switch(dir) {
-		case Dir.R: case Dir.L: return startHW;
-		case Dir.U: case Dir.D: return startHH;
-		default: throw new IllegalArgumentException();
-		}
-	}
-	
-	double getVelHDim(int dir) {
-		switch(dir) {
-		case Dir.R: case Dir.L: return velHW;
-		case Dir.U: case Dir.D: return velHH;
-		default: throw new IllegalArgumentException();
-		}
-	}
-	
-	double getStartEdgeComp(int edge) {
-		return getStartPosComp(edge) + getStartHDim(edge);
-	}
-	
-	double getVelEdgeComp(int edge) {
-		return getVelComp(edge) + getVelHDim(edge);
-	}
-	
-	double getEdgeComp(int edge, double time) {
-		return getStartEdgeComp(edge) + (time - startTime)*getVelEdgeComp(edge);
-	}
-
-	@Override
-	double getBoundEdgeComp(int edge, double startTime, double endTime) {
-		double base = getStartEdgeComp(edge);
-		double vel = getVelEdgeComp(edge);
-		double evalTime = (vel > 0.0) ? endTime : startTime;
-		return base + vel*(evalTime - this.startTime);
-	}
-
-	@Override
-	boolean isMoving() {
-		return velX != 0.0 || velY != 0.0 || velHW != 0.0 || velHH != 0.0;
-	}
-
-	@Override
-	double getMaxBoundEdgeVel() {
-		double vel = 0.0;
-		for(int dir = 0; dir < 2; dir++) {
-			vel = Math.max(vel, Arith.abs(getVelComp(dir)) + Arith.abs(getVelHDim(dir)));
-		}
-		return vel;
-	}
-	
-	void dummyMimicCircle(HBCircle c) {
-		startTime = c.startTime;
-		startX = c.startX;
-		startY = c.startY;
-		startHW = c.startRad;
-		startHH = c.startRad;
-		velX = c.velX;
-		velY = c.velY;
-		velHW = c.velRad;
-		velHH = c.velRad;
-	}
 }
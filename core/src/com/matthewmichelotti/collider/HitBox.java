@@ -47,27 +47,60 @@ public abstract class HitBox {
 	 */
 	public final static int NUM_GROUPS = 256;
 	
+	//kinds of shapes, so that code for pairs of HitBoxes can switch on them
+	//  rather than calling methods that are overridden by each shape
+	final static int RECT = 0, CIRCLE = 1, NUM_SHAPES = 2;
+	
 	double startTime, endTime;
 	final Collider collider;
+	final int shape;
 	Object overlapSet;
+	int handle = -1;
+	int pendingEvents = -1;
+	boolean isStatic; //whether in the StaticIndex of the Collider rather than its broadphase
+	int batchIndex = -1; //index among the HitBoxes altered during a batch of the Collider, or -1
+	
+	//bounds of the HitBox from boundStartTime to boundEndTime, as in getBoundEdgeComp,
+	//  and the fastest that any of its edges move; the Collider sets these once it has
+	//  settled on endTime so that the broadphase and collision tests do not recompute them.
+	//The bounds cover startTime to endTime, except with ColliderOpts.cellTraversal,
+	//  where they only cover the time until the HitBox enters another cell.
+	double boundR, boundU, boundL, boundD;
+	double boundStartTime, boundEndTime;
+	double maxBoundEdgeVel;
+	int layoutVersion; //Broadphase.getLayoutVersion() when the HitBox last queried the broadphase
 	
 	private int group = -2;
 	private int changeId = 0;
 	private int testId = -1;
 	private Object owner;
 	
-	HitBox(Collider collider) {
+	HitBox(Collider collider, int shape) {
 		this.collider = collider;
+		this.shape = shape;
 	}
 	
 	void init() {
 		this.startTime = collider.getTime();
 		this.endTime = this.startTime;
+		this.isStatic = false;
 		
 		this.group = -1;
 		setGroup(0);
 	}
 	
+	//sets up a HitBox as if it had been committed, bypassing Collider.altering
+	void initCommitted(int group, double endTime) {
+		if(group < -1 || group >= NUM_GROUPS) {
+			throw new IllegalArgumentException("invalid group:" + group);
+		}
+		this.startTime = collider.getTime();
+		if(endTime < startTime) throw new IllegalArgumentException("endTime already passed");
+		this.endTime = endTime;
+		this.isStatic = false;
+		this.group = group;
+	}
+	
 	void markTransitionStart() {
 		startTime = collider.getTime();
 		if(endTime < startTime) {
@@ -237,6 +270,19 @@ public abstract class HitBox {
 	abstract double getMaxBoundEdgeVel();
 	
 	final double getBoundEdgeComp(int edge) {
-		return getBoundEdgeComp(edge, startTime, endTime);
+		switch(edge) {
+		case Dir.R: return boundR;
+		case Dir.U: return boundU;
+		case Dir.L: return boundL;
+		case Dir.D: return boundD;
+		default: throw new IllegalArgumentException();
+		}
+	}
+	
+	final void updateBounds() {
+		boundR = getBoundEdgeComp(Dir.R, boundStartTime, boundEndTime);
+		boundU = getBoundEdgeComp(Dir.U, boundStartTime, boundEndTime);
+		boundL = getBoundEdgeComp(Dir.L, boundStartTime, boundEndTime);
+		boundD = getBoundEdgeComp(Dir.D, boundStartTime, boundEndTime);
 	}
 }
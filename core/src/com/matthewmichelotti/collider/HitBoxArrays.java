@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+/**
+ * Describes many HitBoxes to be made at once by {@link Collider#makeHitBoxes(HitBoxArrays)}.
+ * Entry i of each array describes the i-th HitBox.
+ * Arrays that may be null use the given default for every HitBox.
+ * @author Matthew Michelotti
+ */
+public final class HitBoxArrays {
+	/**Number of HitBoxes to make.  Each non-null array must have at least this many entries.*/
+	public int count;
+	
+	/**Whether each HitBox is an {@link HBCircle} rather than an {@link HBRect}.  May be null for all rectangles.*/
+	public boolean[] circles;
+	
+	/**Center x-coordinate of each HitBox.*/
+	public double[] x;
+	
+	/**Center y-coordinate of each HitBox.*/
+	public double[] y;
+	
+	/**Velocity of the center x-coordinate of each HitBox.  May be null for zero velocities.*/
+	public double[] velX;
+	
+	/**Velocity of the center y-coordinate of each HitBox.  May be null for zero velocities.*/
+	public double[] velY;
+	
+	/**Width of each rectangle, or diameter of each circle.*/
+	public double[] widths;
+	
+	/**Height of each rectangle, ignored for circles.  May be null to use the widths.*/
+	public double[] heights;
+	
+	/**
+	 * Group of each HitBox, between -1 and {@link HitBox#NUM_GROUPS}-1 inclusive.
+	 * May be null for group 0.
+	 * @see HitBox#setGroup(int)
+	 */
+	public int[] groups;
+	
+	/**
+	 * End time of each HitBox, as given to {@link HitBox#commit(double)}.
+	 * May be null for positive infinity.
+	 */
+	public double[] endTimes;
+	
+	/**Owner of each HitBox.  May be null.*/
+	public Object[] owners;
+}
@@ -19,6 +19,9 @@ package com.matthewmichelotti.collider;
 
 final class IntBox {
 	int l, b, r, t;
+	int level; //level of the grid in Field that the cell indices refer to
+	boolean oversize; //whether the HitBox is kept in an oversize list of Field instead of the grid
+	int generation; //Grid in Field that the cell indices refer to, while the cell width changes
 	
 	IntBox() {}
 	
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+//Index of the static HitBoxes of a Collider, which never move or change.
+//Each static HitBox has a slot holding its bounds and group.  The index is a sorted array
+//  of (cell, slot) entries, in cells of width ColliderOpts.cellWidth ordered by row and
+//  then column, so that a query does a binary search for each row of cells it covers.
+//The index is not changed after it is built.  Slots from numCellSlots onward are instead
+//  tested directly by every query: static HitBoxes covering too many cells, and those
+//  added since the index was built.  Freed HitBoxes leave an empty slot behind.
+//  The index is rebuilt on the next query when there are enough of either.
+final class StaticIndex {
+	//a static HitBox covering more cells than this is tested directly by every query
+	private final static int MAX_CELLS = 64;
+	//number of unindexed slots always allowed before rebuilding
+	private final static int MIN_PENDING = 16;
+	
+	private final Collider collider;
+	private final double cellWidth;
+	
+	//indexed by slot
+	private double[] minXs = new double[16], minYs = new double[16];
+	private double[] maxXs = new double[16], maxYs = new double[16];
+	private int[] groups = new int[16];
+	private int[] handles = new int[16]; //-1 for a freed HitBox
+	private int numSlots = 0;
+	private int numCellSlots = 0;
+	private int numLarge = 0;
+	private int numFreed = 0;
+	private int numStatic = 0;
+	
+	//slot of each HitBox handle
+	private int[] slotOf = new int[0];
+	
+	//sorted cell keys and the slot of each entry
+	private long[] keys = new long[0];
+	private int[] entries = new int[0];
+	private int numEntries = 0;
+	
+	private final Iter iter = new Iter();
+	
+	StaticIndex(ColliderOpts opts, Collider collider) {
+		this.cellWidth = opts.cellWidth;
+		this.collider = collider;
+	}
+	
+	int size() {return numStatic;}
+	
+	void log() {
+		System.out.println(" static hit boxes: " + numStatic + " (indexed cells: " + numEntries + ")");
+	}
+	
+	void add(HitBox hitBox) {
+		int handle = hitBox.handle;
+		if(handle >= slotOf.length) slotOf = EventStore.copy(slotOf, Math.max(2*slotOf.length, handle + 1));
+		if(numSlots == handles.length) grow(2*numSlots);
+		int slot = numSlots;
+		numSlots++;
+		minXs[slot] = -hitBox.getBoundEdgeComp(Dir.L);
+		minYs[slot] = -hitBox.getBoundEdgeComp(Dir.D);
+		maxXs[slot] = hitBox.getBoundEdgeComp(Dir.R);
+		maxYs[slot] = hitBox.getBoundEdgeComp(Dir.U);
+		groups[slot] = hitBox.getGroup();
+		handles[slot] = handle;
+		slotOf[handle] = slot;
+		numStatic++;
+	}
+	
+	void remove(HitBox hitBox) {
+		int slot = slotOf[hitBox.handle];
+		if(handles[slot] != hitBox.handle) throw new RuntimeException();
+		handles[slot] = -1;
+		numFreed++;
+		numStatic--;
+		if(numStatic == 0) clear();
+	}
+	
+	private void clear() {
+		numSlots = 0;
+		numCellSlots = 0;
+		numLarge = 0;
+		numFreed = 0;
+		keys = new long[0];
+		entries = new int[0];
+		numEntries = 0;
+	}
+	
+	//static HitBoxes in the given groups whose bounds overlap the bounds of hitBox,
+	//  excluding those for which testMark(testId) returns false
+	//NOTE: should iterate to completion
+	Iterable<HitBox> iterator(HitBox hitBox, int[] groups, int testId) {
+		if(numStatic == 0) return iter.empty();
+		int numPending = numSlots - numCellSlots - numLarge;
+		if(numPending > Math.max(MIN_PENDING, numCellSlots/8)
+				|| (numFreed > MIN_PENDING && 2*numFreed > numSlots)) {
+			rebuild();
+		}
+		iter.init(hitBox, groups, testId);
+		return iter;
+	}
+	
+	private void rebuild() {
+		//move live slots covering few cells to the front, followed by the large ones
+		int[] order = new int[numSlots - numFreed];
+		int numCells = 0, numLive = 0;
+		numLarge = 0;
+		for(int slot = 0; slot < numSlots; slot++) {
+			if(handles[slot] < 0) continue;
+			long cells = getNumCells(slot);
+			if(cells > MAX_CELLS) {
+				numLarge++;
+				order[order.length - numLarge] = slot;
+			}
+			else {
+				order[numLive] = slot;
+				numLive++;
+				numCells += (int)cells;
+			}
+		}
+		//large slots were filled from the back, so reverse them to keep their order
+		for(int i = numLive, j = order.length - 1; i < j; i++, j--) {
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+		double[] newMinXs = new double[handles.length], newMinYs = new double[handles.length];
+		double[] newMaxXs = new double[handles.length], newMaxYs = new double[handles.length];
+		int[] newGroups = new int[handles.length], newHandles = new int[handles.length];
+		for(int i = 0; i < order.length; i++) {
+			int slot = order[i];
+			newMinXs[i] = minXs[slot];
+			newMinYs[i] = minYs[slot];
+			newMaxXs[i] = maxXs[slot];
+			newMaxYs[i] = maxYs[slot];
+			newGroups[i] = groups[slot];
+			newHandles[i] = handles[slot];
+			slotOf[handles[slot]] = i;
+		}
+		minXs = newMinXs;
+		minYs = newMinYs;
+		maxXs = newMaxXs;
+		maxYs = newMaxYs;
+		groups = newGroups;
+		handles = newHandles;
+		numSlots = order.length;
+		numCellSlots = numLive;
+		numFreed = 0;
+		
+		keys = new long[numCells];
+		entries = new int[numCells];
+		numEntries = 0;
+		for(int slot = 0; slot < numCellSlots; slot++) {
+			int l = Arith.floor(minXs[slot]/cellWidth), r = maxCell(l, maxXs[slot]);
+			int b = Arith.floor(minYs[slot]/cellWidth), t = maxCell(b, maxYs[slot]);
+			for(int y = b; y <= t; y++) {
+				for(int x = l; x <= r; x++) {
+					keys[numEntries] = key(x, y);
+					entries[numEntries] = slot;
+					numEntries++;
+				}
+			}
+		}
+		sort(keys, entries, new long[numEntries], new int[numEntries], 0, numEntries);
+	}
+	
+	private long getNumCells(int slot) {
+		int l = Arith.floor(minXs[slot]/cellWidth), r = maxCell(l, maxXs[slot]);
+		int b = Arith.floor(minYs[slot]/cellWidth), t = maxCell(b, maxYs[slot]);
+		return (r - (long)l + 1)*(t - (long)b + 1);
+	}
+	
+	private int maxCell(int min, double max) {
+		return Math.max(min, Arith.ceil(max/cellWidth) - 1);
+	}
+	
+	//orders cells by row and then by column
+	static long key(int x, int y) {
+		return ((long)y << 32) | ((x ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+	}
+	
+	//merge sort of keys over [start, end), moving vals along with them
+	static void sort(long[] keys, int[] vals, long[] tmpKeys, int[] tmpVals, int start, int end) {
+		if(end - start < 2) return;
+		int mid = (start + end) >>> 1;
+		sort(keys, vals, tmpKeys, tmpVals, start, mid);
+		sort(keys, vals, tmpKeys, tmpVals, mid, end);
+		if(keys[mid - 1] <= keys[mid]) return;
+		System.arraycopy(keys, start, tmpKeys, start, end - start);
+		System.arraycopy(vals, start, tmpVals, start, end - start);
+		int i = start, j = mid;
+		for(int k = start; k < end; k++) {
+			if(j >= end || (i < mid && tmpKeys[i] <= tmpKeys[j])) {
+				keys[k] = tmpKeys[i];
+				vals[k] = tmpVals[i];
+				i++;
+			}
+			else {
+				keys[k] = tmpKeys[j];
+				vals[k] = tmpVals[j];
+				j++;
+			}
+		}
+	}
+	
+	//first position whose key is at least the given key
+	private int lowerBound(long key) {
+		int lo = 0, hi = numEntries;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(keys[mid] < key) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+	
+	private void grow(int length) {
+		minXs = EventStore.copy(minXs, length);
+		minYs = EventStore.copy(minYs, length);
+		maxXs = EventStore.copy(maxXs, length);
+		maxYs = EventStore.copy(maxYs, length);
+		groups = EventStore.copy(groups, length);
+		handles = EventStore.copy(handles, length);
+	}
+	
+	private class Iter implements Iterator<HitBox>, Iterable<HitBox> {
+		private final boolean[] groupMask = new boolean[HitBox.NUM_GROUPS];
+		private int[] queryGroups;
+		private double minX, minY, maxX, maxY;
+		private int l, r, y, t;
+		private int pos, end; //range of entries in the current row
+		private int scanSlot; //next slot to test directly, once the rows are done
+		private HitBox next;
+		private int testId;
+		
+		private Iter empty() {
+			next = null;
+			return this;
+		}
+		
+		private void init(HitBox hitBox, int[] queryGroups, int testId) {
+			this.queryGroups = queryGroups;
+			for(int group : queryGroups) groupMask[group] = true;
+			this.testId = testId;
+			minX = -hitBox.getBoundEdgeComp(Dir.L);
+			minY = -hitBox.getBoundEdgeComp(Dir.D);
+			maxX = hitBox.getBoundEdgeComp(Dir.R);
+			maxY = hitBox.getBoundEdgeComp(Dir.U);
+			l = Arith.floor(minX/cellWidth);
+			r = maxCell(l, maxX);
+			int b = Arith.floor(minY/cellWidth);
+			t = maxCell(b, maxY);
+			pos = 0;
+			end = 0;
+			if((r - (long)l + 1)*(t - (long)b + 1) > numEntries) {
+				//cheaper to test every HitBox than to search every row
+				y = t;
+				scanSlot = 0;
+			}
+			else {
+				y = b - 1;
+				scanSlot = numCellSlots;
+			}
+			searchNext();
+		}
+		
+		private void searchNext() {
+			while(true) {
+				while(pos < end) {
+					int slot = entries[pos];
+					pos++;
+					if(test(slot)) return;
+				}
+				if(y >= t) break;
+				y++;
+				pos = lowerBound(key(l, y));
+				end = lowerBound(key(r, y) + 1);
+			}
+			while(scanSlot < numSlots) {
+				int slot = scanSlot;
+				scanSlot++;
+				if(test(slot)) return;
+			}
+			for(int group : queryGroups) groupMask[group] = false;
+			queryGroups = null;
+			next = null;
+		}
+		
+		private boolean test(int slot) {
+			int handle = handles[slot];
+			if(handle < 0 || !groupMask[groups[slot]]) return false;
+			if(maxX < minXs[slot] || maxY < minYs[slot] || minX > maxXs[slot] || minY > maxYs[slot]) return false;
+			next = collider.getHitBox(handle);
+			return next.testMark(testId);
+		}
+		
+		@Override
+		public HitBox next() {
+			if(next == null) throw new NoSuchElementException();
+			HitBox result = next;
+			searchNext();
+			return result;
+		}
+		
+		@Override public Iterator<HitBox> iterator() {return this;}
+		@Override public boolean hasNext() {return next != null;}
+		@Override public void remove() {throw new UnsupportedOperationException();}
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+//Broadphase that keeps the bounds of HitBoxes in arrays sorted by their left edge.
+//Bounds are in units of cellWidth, as for the grid in Field.  Since HitBoxes only move
+//  a little between updates, the order is restored by insertion sort starting from the
+//  old position of the updated entry.  A query scans the entries whose left edge is
+//  between region.l - maxWidth and region.r.
+//Removed entries are left in place with a handle of -1 until the arrays are compacted.
+final class SweepAndPrune implements Broadphase {
+	private final Collider collider;
+	private final double cellWidth;
+
+	//indexed by position in sorted order
+	private int[] ls = new int[64], bs = new int[64], rs = new int[64], ts = new int[64];
+	private int[] groups = new int[64];
+	private int[] handles = new int[64];
+	private int size = 0;
+	private int numRemoved = 0;
+
+	//position of each HitBox handle
+	private int[] positions = new int[0];
+
+	//upper bound on r - l over all entries, recomputed after enough entries shrink or are removed
+	private int maxWidth = 0;
+	private int numShrinks = 0;
+
+	private final Iter iter = new Iter();
+
+	SweepAndPrune(ColliderOpts opts, Collider collider) {
+		if(opts.cellWidth <= 0.0) throw new IllegalArgumentException();
+		this.cellWidth = opts.cellWidth;
+		this.collider = collider;
+	}
+
+	@Override public int getNumEntries() {return size - numRemoved;}
+	@Override public double getCellWidth() {return cellWidth;}
+	@Override public int getNumRebuilds() {return 0;}
+	@Override public int getLayoutVersion() {return 0;}
+
+	@Override
+	public void log() {
+		System.out.println(" sorted intervals: " + getNumEntries() + " (max width " + maxWidth + ")");
+	}
+
+	@Override
+	public void getIndexBounds(HitBox hitBox, IntBox bounds) {
+		bounds.l = Arith.floor(-hitBox.getBoundEdgeComp(Dir.L)/cellWidth);
+		bounds.b = Arith.floor(-hitBox.getBoundEdgeComp(Dir.D)/cellWidth);
+		bounds.r = Arith.max(bounds.l, Arith.ceil(hitBox.getBoundEdgeComp(Dir.R)/cellWidth) - 1);
+		bounds.t = Arith.max(bounds.b, Arith.ceil(hitBox.getBoundEdgeComp(Dir.U)/cellWidth) - 1);
+		bounds.level = 0;
+		bounds.oversize = false;
+	}
+
+	@Override
+	public void getQueryBounds(HitBox hitBox, IntBox bounds) {
+		getIndexBounds(hitBox, bounds);
+	}
+
+	@Override
+	public double getGridPeriod(HitBox hitBox) {
+		double speed = hitBox.maxBoundEdgeVel;
+		if(speed <= 0.0) return Double.POSITIVE_INFINITY;
+		else return cellWidth/speed;
+	}
+
+	@Override public double getCellWidth(HitBox hitBox) {return cellWidth;}
+
+	@Override
+	public void remove(HitBox hitBox, int group, IntBox oldBox, IntBox newBox) {
+		if(group < 0) return;
+		if(newBox != null) return; //entry is updated in place by add
+		int pos = positions[hitBox.handle];
+		if(pos < 0 || handles[pos] != hitBox.handle) throw new RuntimeException();
+		handles[pos] = -1;
+		positions[hitBox.handle] = -1;
+		numRemoved++;
+		markShrink();
+		if(numRemoved > 32 && 2*numRemoved > size) compact();
+	}
+
+	@Override
+	public void add(HitBox hitBox, int group, IntBox oldBox, IntBox newBox) {
+		if(group < 0) return;
+		int handle = hitBox.handle;
+		int pos;
+		if(oldBox != null) {
+			pos = positions[handle];
+			if(pos < 0 || handles[pos] != handle) throw new RuntimeException();
+			if(newBox.r - newBox.l < oldBox.r - oldBox.l) markShrink();
+		}
+		else {
+			if(handle >= positions.length) {
+				int length = Math.max(2*positions.length, handle + 1);
+				int oldLength = positions.length;
+				positions = EventStore.copy(positions, length);
+				for(int i = oldLength; i < length; i++) positions[i] = -1;
+			}
+			if(positions[handle] >= 0) throw new RuntimeException();
+			if(size == handles.length) grow(2*size);
+			pos = size;
+			size++;
+			handles[pos] = handle;
+			groups[pos] = group;
+		}
+		ls[pos] = newBox.l;
+		bs[pos] = newBox.b;
+		rs[pos] = newBox.r;
+		ts[pos] = newBox.t;
+		maxWidth = Math.max(maxWidth, newBox.r - newBox.l);
+		positions[handle] = pos;
+		sift(pos);
+	}
+
+	@Override
+	public Iterable<HitBox> iterator(IntBox region, int[] groups, int testId) {
+		iter.init(region, groups, testId);
+		return iter;
+	}
+
+	@Override
+	public Iterable<HitBox> oversizeIterator(int[] groups, int testId) {
+		return Collections.emptyList();
+	}
+
+	//moves the entry at pos left or right until the entries are sorted again
+	private void sift(int pos) {
+		int l = ls[pos], b = bs[pos], r = rs[pos], t = ts[pos];
+		int group = groups[pos], handle = handles[pos];
+		while(pos > 0 && ls[pos - 1] > l) {
+			move(pos - 1, pos);
+			pos--;
+		}
+		while(pos < size - 1 && ls[pos + 1] < l) {
+			move(pos + 1, pos);
+			pos++;
+		}
+		ls[pos] = l;
+		bs[pos] = b;
+		rs[pos] = r;
+		ts[pos] = t;
+		groups[pos] = group;
+		handles[pos] = handle;
+		positions[handle] = pos;
+	}
+
+	private void move(int from, int to) {
+		ls[to] = ls[from];
+		bs[to] = bs[from];
+		rs[to] = rs[from];
+		ts[to] = ts[from];
+		groups[to] = groups[from];
+		int handle = handles[from];
+		handles[to] = handle;
+		if(handle >= 0) positions[handle] = to;
+	}
+
+	private void markShrink() {
+		numShrinks++;
+		if(numShrinks <= size) return;
+		numShrinks = 0;
+		maxWidth = 0;
+		for(int pos = 0; pos < size; pos++) {
+			if(handles[pos] >= 0) maxWidth = Math.max(maxWidth, rs[pos] - ls[pos]);
+		}
+	}
+
+	private void compact() {
+		int newSize = 0;
+		for(int pos = 0; pos < size; pos++) {
+			if(handles[pos] < 0) continue;
+			if(pos != newSize) move(pos, newSize);
+			newSize++;
+		}
+		size = newSize;
+		numRemoved = 0;
+	}
+
+	private void grow(int length) {
+		ls = EventStore.copy(ls, length);
+		bs = EventStore.copy(bs, length);
+		rs = EventStore.copy(rs, length);
+		ts = EventStore.copy(ts, length);
+		groups = EventStore.copy(groups, length);
+		handles = EventStore.copy(handles, length);
+	}
+
+	//first position whose left edge is at least the given value
+	private int lowerBound(long l) {
+		int lo = 0, hi = size;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(ls[mid] < l) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	private class Iter implements Iterator<HitBox>, Iterable<HitBox> {
+		private final boolean[] groupMask = new boolean[HitBox.NUM_GROUPS];
+		private int[] queryGroups;
+		private int l, b, r, t;
+		private int pos;
+		private HitBox next;
+		private int testId;
+
+		private void init(IntBox region, int[] queryGroups, int testId) {
+			this.queryGroups = queryGroups;
+			for(int group : queryGroups) groupMask[group] = true;
+			this.testId = testId;
+			l = region.l;
+			b = region.b;
+			r = region.r;
+			t = region.t;
+			pos = lowerBound(l - (long)maxWidth);
+			searchNext();
+		}
+
+		private void searchNext() {
+			while(pos < size && ls[pos] <= r) {
+				int i = pos;
+				pos++;
+				int handle = handles[i];
+				if(handle < 0 || !groupMask[groups[i]]) continue;
+				if(rs[i] < l || ts[i] < b || bs[i] > t) continue;
+				next = collider.getHitBox(handle);
+				if(next.testMark(testId)) return;
+			}
+			for(int group : queryGroups) groupMask[group] = false;
+			queryGroups = null;
+			next = null;
+		}
+
+		@Override
+		public HitBox next() {
+			if(next == null) throw new NoSuchElementException();
+			HitBox result = next;
+			searchNext();
+			return result;
+		}
+
+		@Override public Iterator<HitBox> iterator() {return this;}
+		@Override public boolean hasNext() {return next != null;}
+		@Override public void remove() {throw new UnsupportedOperationException();}
+	}
+}
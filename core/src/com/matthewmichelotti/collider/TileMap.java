@@ -0,0 +1,206 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+/**
+ * Static HBRects covering the solid tiles of a tile map, made by
+ * {@link Collider#loadTileMap(int[][], double, double, double, double, int)}.
+ * Adjacent tiles with the same value are merged into larger rectangles,
+ * so there are fewer HitBoxes and no events at the seams between tiles.
+ * Each rectangle is given an index, which can be used to look up the tiles
+ * that it covers, and the rectangle covering each tile can be looked up as well.
+ * 
+ * @author Matthew Michelotti
+ */
+public final class TileMap {
+	private final int numCols, numRows;
+	private final double x, y, tileWidth, tileHeight;
+	
+	//rectangle index of each tile, in row-major order, or -1 for an empty tile
+	private final int[] rectOf;
+	
+	//indexed by rectangle
+	private HBRect[] rects;
+	private int[] minCols, minRows, widths, heights, values;
+	private int numRects = 0;
+	
+	TileMap(Collider collider, int[][] tiles, double x, double y,
+			double tileWidth, double tileHeight, int group)
+	{
+		if(tileWidth <= 0.0 || tileHeight <= 0.0) throw new IllegalArgumentException();
+		this.numCols = tiles.length;
+		int numRows = 0;
+		for(int[] col : tiles) numRows = Math.max(numRows, col.length);
+		this.numRows = numRows;
+		this.x = x;
+		this.y = y;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		rectOf = new int[numCols*numRows];
+		for(int i = 0; i < rectOf.length; i++) rectOf[i] = -1;
+		int capacity = 16;
+		rects = new HBRect[capacity];
+		minCols = new int[capacity];
+		minRows = new int[capacity];
+		widths = new int[capacity];
+		heights = new int[capacity];
+		values = new int[capacity];
+		
+		//Greedy merging: the first tile not yet covered, in row-major order, is extended
+		//  to the right as far as possible, and then that run is extended upward as far
+		//  as every tile of the next row matches it.
+		//The rectangles are not made inside a batch (Collider.beginBatch), which does not
+		//  take static HitBoxes.  A batch would not help anyway: static HitBoxes are never
+		//  tested against each other, so each new rectangle is only tested against the
+		//  non-static HitBoxes, and StaticIndex defers sorting the new rectangles until
+		//  the next query.
+		for(int row = 0; row < numRows; row++) {
+			for(int col = 0; col < numCols; col++) {
+				int value = getValue(tiles, col, row);
+				if(value == 0 || rectOf[row*numCols + col] >= 0) continue;
+				int width = 1;
+				while(col + width < numCols && canMerge(tiles, col + width, row, value)) width++;
+				int height = 1;
+				while(row + height < numRows && canMergeRow(tiles, col, row + height, width, value)) height++;
+				addRect(collider, col, row, width, height, value, group);
+			}
+		}
+	}
+	
+	private int getValue(int[][] tiles, int col, int row) {
+		int[] column = tiles[col];
+		return (row < column.length) ? column[row] : 0;
+	}
+	
+	private boolean canMerge(int[][] tiles, int col, int row, int value) {
+		return getValue(tiles, col, row) == value && rectOf[row*numCols + col] < 0;
+	}
+	
+	private boolean canMergeRow(int[][] tiles, int col, int row, int width, int value) {
+		for(int i = 0; i < width; i++) {
+			if(!canMerge(tiles, col + i, row, value)) return false;
+		}
+		return true;
+	}
+	
+	private void addRect(Collider collider, int col, int row, int width, int height, int value, int group) {
+		if(numRects == rects.length) {
+			int capacity = 2*numRects;
+			HBRect[] newRects = new HBRect[capacity];
+			System.arraycopy(rects, 0, newRects, 0, numRects);
+			rects = newRects;
+			minCols = EventStore.copy(minCols, capacity);
+			minRows = EventStore.copy(minRows, capacity);
+			widths = EventStore.copy(widths, capacity);
+			heights = EventStore.copy(heights, capacity);
+			values = EventStore.copy(values, capacity);
+		}
+		int index = numRects;
+		numRects++;
+		minCols[index] = col;
+		minRows[index] = row;
+		widths[index] = width;
+		heights[index] = height;
+		values[index] = value;
+		for(int r = row; r < row + height; r++) {
+			for(int c = col; c < col + width; c++) rectOf[r*numCols + c] = index;
+		}
+		rects[index] = collider.makeStaticRect(x + (col + .5*width)*tileWidth,
+				y + (row + .5*height)*tileHeight, width*tileWidth, height*tileHeight, group);
+	}
+	
+	/**
+	 * Returns the number of rectangles that the tiles were merged into.
+	 * @return The number of rectangles.
+	 */
+	public int getNumRects() {return numRects;}
+	
+	/**
+	 * Returns a rectangle of the tile map.
+	 * @param index Index of the rectangle, from 0 to {@link #getNumRects()}-1 inclusive.
+	 * @return The rectangle, or null if {@link #free()} has been called.
+	 */
+	public HBRect getRect(int index) {return rects[index];}
+	
+	/**
+	 * Returns the index of the rectangle covering a tile.
+	 * @param col Column of the tile, which is the first index into the tiles array.
+	 * @param row Row of the tile, which is the second index into the tiles array.
+	 * @return Index of the rectangle covering the tile, or -1 if the tile is empty
+	 *   or outside of the tile map.
+	 */
+	public int getRectIndex(int col, int row) {
+		if(col < 0 || col >= numCols || row < 0 || row >= numRows) return -1;
+		return rectOf[row*numCols + col];
+	}
+	
+	/**
+	 * Returns the index of the rectangle covering a point.
+	 * @param px X-coordinate of the point.
+	 * @param py Y-coordinate of the point.
+	 * @return Index of the rectangle covering the point, or -1 if there is none.
+	 */
+	public int getRectIndexAt(double px, double py) {
+		return getRectIndex(Arith.floor((px - x)/tileWidth), Arith.floor((py - y)/tileHeight));
+	}
+	
+	/**
+	 * Returns the lowest column of the tiles covered by a rectangle.
+	 * @param index Index of the rectangle.
+	 * @return The lowest column covered by the rectangle.
+	 */
+	public int getMinCol(int index) {return minCols[index];}
+	
+	/**
+	 * Returns the lowest row of the tiles covered by a rectangle.
+	 * @param index Index of the rectangle.
+	 * @return The lowest row covered by the rectangle.
+	 */
+	public int getMinRow(int index) {return minRows[index];}
+	
+	/**
+	 * Returns the number of columns of tiles covered by a rectangle.
+	 * @param index Index of the rectangle.
+	 * @return The number of columns covered by the rectangle.
+	 */
+	public int getNumCols(int index) {return widths[index];}
+	
+	/**
+	 * Returns the number of rows of tiles covered by a rectangle.
+	 * @param index Index of the rectangle.
+	 * @return The number of rows covered by the rectangle.
+	 */
+	public int getNumRows(int index) {return heights[index];}
+	
+	/**
+	 * Returns the value of the tiles covered by a rectangle.
+	 * @param index Index of the rectangle.
+	 * @return The value of the tiles covered by the rectangle.
+	 */
+	public int getValue(int index) {return values[index];}
+	
+	/**
+	 * Frees all of the rectangles of the tile map.
+	 * Lookups of tiles can still be made afterwards.
+	 */
+	public void free() {
+		for(int i = 0; i < numRects; i++) {
+			if(rects[i] != null) rects[i].free();
+			rects[i] = null;
+		}
+	}
+}
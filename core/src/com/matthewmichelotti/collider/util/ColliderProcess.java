@@ -60,13 +60,16 @@ public class ColliderProcess implements ContProcess {
 		if(evt != null) throw new RuntimeException();
 	}
 
+	//Hands at most one collision/separation to the listener, so that the budget of
+	//  ContProcesses.stepToTime(double, int, long) is checked before each one,
+	//  even when many occur at the same time.  The event is returned by the Collider
+	//  before it is given to the listener, so the listener may call back into the Collider.
 	@Override
 	public void resolveEvent() {
-		double time = collider.getTime();
-		ColliderEvent evt = collider.stepToTime(time);
+		ColliderEvent evt = collider.stepToTime(collider.getTime());
 		if(evt != null) {
 			if(evt.isCollision()) listener.collision(evt);
-			else if(evt.isSeparation()) listener.separation(evt);
+			else listener.separation(evt);
 		}
 	}
 }
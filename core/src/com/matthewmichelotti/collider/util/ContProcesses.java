@@ -74,7 +74,35 @@ public class ContProcesses {
 	 * @param newTime Time to advance the processes to.
 	 */
 	public void stepToTime(double newTime) {
+		stepToTime(newTime, Integer.MAX_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Same as {@link #stepToTime(double)}, except that this method
+	 * stops early if a given amount of work has been done.
+	 * This can be used to spread the work of catching up with a target
+	 * time over several frames of a game.
+	 * The budget is checked before resolving each event, and at least one
+	 * event is resolved when there is one to resolve.
+	 * @param newTime Time to advance the processes to
+	 *   (unless the budget runs out first).
+	 * @param maxEvents Maximum number of calls to {@link ContProcess#resolveEvent()}.
+	 *   For a {@link ColliderProcess}, each call gives at most one collision/separation
+	 *   to its listener.
+	 *   Use Integer.MAX_VALUE for no limit.
+	 * @param maxNanos Maximum number of nanoseconds to spend in this call.
+	 *   Use Long.MAX_VALUE for no limit.
+	 * @return The time that the processes were advanced to.
+	 *   This is newTime, unless the budget ran out, in which case it is the
+	 *   time of the last resolved event.  Other events at that time may be left
+	 *   to be resolved by the next call.
+	 */
+	public double stepToTime(double newTime, int maxEvents, long maxNanos) {
 		if(newTime < time) throw new RuntimeException();
+		if(maxEvents <= 0 || maxNanos <= 0) throw new IllegalArgumentException();
+		boolean timed = (maxNanos != Long.MAX_VALUE);
+		long startNanos = timed ? System.nanoTime() : 0;
+		int numResolved = 0;
 		while(true) {
 			double minEvtTime = newTime;
 			int minEvtTimeI = -1;
@@ -86,6 +114,11 @@ public class ContProcesses {
 					minEvtTimeI = i;
 				}
 			}
+			if(minEvtTimeI >= 0 && numResolved > 0 && (numResolved >= maxEvents
+					|| (timed && System.nanoTime() - startNanos >= maxNanos)))
+			{
+				break;
+			}
 			if(minEvtTime != time) {
 				for(int i = 0; i < processes.size(); i++) {
 					processes.get(i).stepToTime(minEvtTime);
@@ -94,6 +127,8 @@ public class ContProcesses {
 			this.time = minEvtTime;
 			if(minEvtTimeI < 0) break;
 			processes.get(minEvtTimeI).resolveEvent();
+			numResolved++;
 		}
+		return time;
 	}
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.matthewmichelotti.collider.ColliderOpts.BroadphaseType;
+import com.matthewmichelotti.collider.ColliderOpts.EventQueueType;
+
+//Checks that making HitBoxes with Collider.makeHitBoxes, and changing them between
+//  beginBatch and commitBatch, finds the same events as making and committing
+//  each HitBox on its own.
+public class BatchTest {
+	private final static double DURATION = 6.0;
+	private final static double TICK = .25;
+	private final static int NUM_INITIAL = 150, NUM_SPAWNED = 40;
+	private final static int[] GROUPS_0_1 = {0, 1};
+	private final static int[] GROUPS_0 = {0};
+
+	private enum Mode {INDIVIDUAL, BULK, BATCH}
+
+	@Test
+	public void grid() {
+		ColliderOpts opts = EventScene.makeOpts();
+		check("grid", opts);
+		opts = EventScene.makeOpts();
+		opts.gridLevels = 4;
+		check("gridLevels", opts);
+		opts = EventScene.makeOpts();
+		opts.gridMargin = 11.0;
+		check("gridMargin", opts);
+		opts = EventScene.makeOpts();
+		opts.oversizeCells = 4;
+		opts.cellTraversal = true;
+		check("oversizeCells, cellTraversal", opts);
+		opts = EventScene.makeOpts();
+		opts.adaptiveCellWidth = true;
+		opts.cellWidth = 3.0;
+		check("adaptiveCellWidth", opts);
+		opts = EventScene.makeOpts();
+		opts.eventQueueType = EventQueueType.CALENDAR;
+		check("calendar queue", opts);
+	}
+
+	@Test
+	public void sweepAndPrune() {
+		ColliderOpts opts = EventScene.makeOpts();
+		opts.broadphaseType = BroadphaseType.SWEEP_AND_PRUNE;
+		check("sweep and prune", opts);
+	}
+
+	@Test
+	public void tree() {
+		ColliderOpts opts = EventScene.makeOpts();
+		opts.broadphaseType = BroadphaseType.TREE;
+		check("tree", opts);
+	}
+
+	private static void check(String name, ColliderOpts opts) {
+		List<String> expected = run(opts, Mode.INDIVIDUAL);
+		assertTrue(name, expected.size() > 300);
+		assertEquals(name + ", makeHitBoxes", expected, run(opts, Mode.BULK));
+		assertEquals(name + ", beginBatch", expected, run(opts, Mode.BATCH));
+	}
+
+	//Runs a scene of HitBoxes that are made at the start and part way through, changed
+	//  at the end of each tick by a script, and some of them freed.  Returns one line per
+	//  event, sorted as in EventScene.
+	private static List<String> run(ColliderOpts opts, Mode mode) {
+		opts.interactTester = new InteractTester() {
+			@Override
+			public boolean canInteract(HitBox a, HitBox b) {
+				return a.getGroup() == 0 || b.getGroup() == 0;
+			}
+
+			@Override
+			public int[] getInteractGroups(HitBox hitBox) {
+				return (hitBox.getGroup() == 0) ? GROUPS_0_1 : GROUPS_0;
+			}
+		};
+		Collider collider = new Collider(opts);
+		List<HBPositioned> hitBoxes = new ArrayList<HBPositioned>();
+		List<Double> endTimes = new ArrayList<Double>();
+		make(collider, mode, describe(new Random(21), 0, NUM_INITIAL, 0.0), hitBoxes, endTimes);
+
+		List<String> log = new ArrayList<String>();
+		Random script = new Random(22);
+		for(double time = TICK; time <= DURATION; time += TICK) {
+			while(true) {
+				ColliderEvent evt = collider.stepToTime(time);
+				if(evt == null) break;
+				int a = (Integer)evt.getFirst().getOwner(), b = (Integer)evt.getSecond().getOwner();
+				log.add(String.format(Locale.US, "%.5f %s %d %d", collider.getTime(),
+						evt.isCollision() ? "collide" : "separate", Math.min(a, b), Math.max(a, b)));
+			}
+			if(mode != Mode.INDIVIDUAL) collider.beginBatch();
+			for(int i = 0; i < hitBoxes.size(); i++) {
+				HBPositioned hitBox = hitBoxes.get(i);
+				if(hitBox == null) continue;
+				if(time == 2.0 && i % 5 == 0) {
+					hitBox.free();
+					hitBoxes.set(i, null);
+				}
+				else if(endTimes.get(i) == time || script.nextInt(8) == 0) {
+					hitBox.setVel(script.nextGaussian()*80, script.nextGaussian()*80);
+					if(hitBox instanceof HBCircle) {
+						((HBCircle)hitBox).setDiam(5 + script.nextDouble()*25);
+					}
+					double endTime = script.nextBoolean() ? time + TICK*(1 + script.nextInt(8))
+							: Double.POSITIVE_INFINITY;
+					endTimes.set(i, endTime);
+					hitBox.commit(endTime);
+				}
+			}
+			if(time == 3.0) {
+				make(collider, mode, describe(new Random(23), NUM_INITIAL, NUM_SPAWNED, time),
+						hitBoxes, endTimes);
+			}
+			if(mode != Mode.INDIVIDUAL) collider.commitBatch();
+		}
+		Collections.sort(log);
+		return log;
+	}
+
+	private static HitBoxArrays describe(Random random, int firstId, int count, double time) {
+		HitBoxArrays arrays = new HitBoxArrays();
+		arrays.count = count;
+		arrays.circles = new boolean[count];
+		arrays.x = new double[count];
+		arrays.y = new double[count];
+		arrays.velX = new double[count];
+		arrays.velY = new double[count];
+		arrays.widths = new double[count];
+		arrays.heights = new double[count];
+		arrays.groups = new int[count];
+		arrays.endTimes = new double[count];
+		arrays.owners = new Object[count];
+		for(int i = 0; i < count; i++) {
+			arrays.circles[i] = random.nextBoolean();
+			arrays.x[i] = random.nextDouble()*700;
+			arrays.y[i] = random.nextDouble()*500;
+			arrays.velX[i] = random.nextGaussian()*80;
+			arrays.velY[i] = random.nextGaussian()*80;
+			//a few wide rects, which are oversize for some options
+			arrays.widths[i] = (i % 25 == 0) ? 150 + random.nextDouble()*100 : 5 + random.nextDouble()*25;
+			arrays.heights[i] = 5 + random.nextDouble()*25;
+			if(i % 25 == 0) arrays.circles[i] = false;
+			arrays.groups[i] = (i % 3 == 0) ? 1 : 0;
+			arrays.endTimes[i] = (random.nextInt(3) == 0) ? time + TICK*(1 + random.nextInt(12))
+					: Double.POSITIVE_INFINITY;
+			arrays.owners[i] = firstId + i;
+		}
+		return arrays;
+	}
+
+	private static void make(Collider collider, Mode mode, HitBoxArrays arrays,
+			List<HBPositioned> hitBoxes, List<Double> endTimes)
+	{
+		if(mode == Mode.BULK) {
+			for(HitBox hitBox : collider.makeHitBoxes(arrays)) hitBoxes.add((HBPositioned)hitBox);
+		}
+		else {
+			boolean ownBatch = (mode == Mode.BATCH && hitBoxes.isEmpty());
+			if(ownBatch) collider.beginBatch();
+			for(int i = 0; i < arrays.count; i++) {
+				HBPositioned hitBox;
+				if(arrays.circles[i]) {
+					HBCircle circ = collider.makeCircle();
+					circ.setDiam(arrays.widths[i]);
+					hitBox = circ;
+				}
+				else {
+					HBRect rect = collider.makeRect();
+					rect.setDims(arrays.widths[i], arrays.heights[i]);
+					hitBox = rect;
+				}
+				hitBox.setPos(arrays.x[i], arrays.y[i]);
+				hitBox.setVel(arrays.velX[i], arrays.velY[i]);
+				hitBox.setGroup(arrays.groups[i]);
+				hitBox.setOwner(arrays.owners[i]);
+				hitBox.commit(arrays.endTimes[i]);
+				hitBoxes.add(hitBox);
+			}
+			if(ownBatch) collider.commitBatch();
+		}
+		for(int i = 0; i < arrays.count; i++) endTimes.add(arrays.endTimes[i]);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+//Checks that moving HitBoxes through the broadphase cell by cell finds the same events
+//  as querying every cell that their bounds cover.
+public class CellTraversalTest {
+	private final static int[] GROUPS = {0};
+
+	//Wide rects shrink until their bounds no longer span more than oversizeCells cells,
+	//  so they leave the oversize list while small HitBoxes move around them.
+	@Test
+	public void leavingOversizeList() {
+		List<String> expected = run(0, false);
+		assertTrue(expected.size() > 100);
+		assertEquals(expected, run(4, false));
+		assertEquals(expected, run(4, true));
+		assertEquals(expected, run(0, true));
+	}
+
+	private static List<String> run(int oversizeCells, boolean cellTraversal) {
+		ColliderOpts opts = new ColliderOpts();
+		opts.cellWidth = 20.0;
+		opts.separateBuffer = .1;
+		opts.maxForesightTime = 2.0;
+		opts.oversizeCells = oversizeCells;
+		opts.cellTraversal = cellTraversal;
+		opts.interactTester = new InteractTester() {
+			@Override public boolean canInteract(HitBox a, HitBox b) {return true;}
+			@Override public int[] getInteractGroups(HitBox hitBox) {return GROUPS;}
+		};
+		Collider collider = new Collider(opts);
+		Random random = new Random(7);
+		for(int i = 0; i < 12; i++) {
+			HBRect rect = collider.makeRect();
+			rect.setPos(random.nextDouble()*600, random.nextDouble()*400);
+			rect.setDims(150 + random.nextDouble()*100, 6);
+			rect.setVelDims(-40, 0);
+			rect.setVel(random.nextGaussian()*10, random.nextGaussian()*10);
+			rect.setOwner(i);
+			rect.commit(3.5);
+		}
+		for(int i = 12; i < 150; i++) {
+			HBCircle circ = collider.makeCircle();
+			circ.setPos(random.nextDouble()*600, random.nextDouble()*400);
+			circ.setDiam(4 + random.nextDouble()*8);
+			circ.setVel(random.nextGaussian()*60, random.nextGaussian()*60);
+			circ.setOwner(i);
+			circ.commit(Double.POSITIVE_INFINITY);
+		}
+		List<String> log = new ArrayList<String>();
+		while(true) {
+			ColliderEvent evt = collider.stepToTime(3.5);
+			if(evt == null) break;
+			int a = (Integer)evt.getFirst().getOwner(), b = (Integer)evt.getSecond().getOwner();
+			log.add(String.format("%.5f %s %d %d", collider.getTime(),
+					evt.isCollision() ? "collide" : "separate", Math.min(a, b), Math.max(a, b)));
+		}
+		Collections.sort(log);
+		return log;
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class EventQuantumTest {
+	private final static double QUANTUM = .1;
+	private final static int[] GROUPS = {0};
+
+	private static Collider makeCollider(double eventQuantum) {
+		ColliderOpts opts = new ColliderOpts();
+		opts.cellWidth = 20.0;
+		opts.separateBuffer = .1;
+		opts.maxForesightTime = 2.0;
+		opts.eventQuantum = eventQuantum;
+		opts.interactTester = new InteractTester() {
+			@Override public boolean canInteract(HitBox a, HitBox b) {return true;}
+			@Override public int[] getInteractGroups(HitBox hitBox) {return GROUPS;}
+		};
+		return new Collider(opts);
+	}
+
+	//A rect is moved onto another one at the end of each tick, where the tick times
+	//  are sums of the quantum such as .1 + .1 + .1, which are not exact multiples of it.
+	//  The collision is due at once, so it must not be delayed to the next tick.
+	@Test
+	public void overlapAtTickTime() {
+		Collider collider = makeCollider(QUANTUM);
+		HBRect a = collider.makeRect();
+		a.setDims(10);
+		a.commit(Double.POSITIVE_INFINITY);
+		HBRect b = collider.makeRect();
+		b.setPos(100, 0);
+		b.setDims(10);
+		b.commit(Double.POSITIVE_INFINITY);
+		double time = 0.0;
+		for(int k = 1; k <= 20; k++) {
+			time += QUANTUM;
+			assertNull(collider.stepToTime(time));
+			b.setPos(5, 0);
+			b.commit(Double.POSITIVE_INFINITY);
+			ColliderEvent evt = collider.stepToTime(time);
+			assertNotNull(evt);
+			assertTrue(evt.isCollision());
+			assertEquals(time, collider.getTime(), 0.0);
+			b.setPos(100, 0);
+			b.commit(Double.POSITIVE_INFINITY);
+			evt = collider.stepToTime(time);
+			assertNotNull(evt);
+			assertTrue(evt.isSeparation());
+			assertEquals(time, collider.getTime(), 0.0);
+		}
+	}
+
+	//a collision within a tick arrives at the end of that tick, and one at the end
+	//  of a tick is not delayed
+	@Test
+	public void collisionRoundedUpToTick() {
+		checkCollisionAtTick(-.5);
+		checkCollisionAtTick(0.0);
+	}
+
+	private static void checkCollisionAtTick(double offset) {
+		for(int k = 1; k <= 20; k++) {
+			Collider collider = makeCollider(QUANTUM);
+			HBRect a = collider.makeRect();
+			a.setDims(10);
+			a.commit(Double.POSITIVE_INFINITY);
+			HBRect b = collider.makeRect();
+			b.setDims(10);
+			b.setPos(10 + 10*(k + offset)*QUANTUM, 0);
+			b.setVel(-10, 0);
+			b.commit(Double.POSITIVE_INFINITY);
+			ColliderEvent evt = collider.stepToTime(10.0);
+			assertNotNull(evt);
+			assertTrue(evt.isCollision());
+			assertEquals(k*QUANTUM, collider.getTime(), 0.0);
+		}
+	}
+
+	//EventScene only commits at multiples of its tick, so all of its events do too
+	@Test
+	public void sceneEventsAtTicks() {
+		ColliderOpts opts = EventScene.makeOpts();
+		opts.eventQuantum = EventScene.TICK;
+		List<String> log = new EventScene().run(opts);
+		assertTrue(log.size() > 100);
+		for(String line : log) {
+			double time = Double.parseDouble(line.substring(0, line.indexOf(' ')));
+			assertEquals(line, 0.0, Math.IEEEremainder(time, EventScene.TICK), 1e-9);
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+//A deterministic scene of moving rects and circles among walls, whose event stream does not
+//  depend on how the Collider finds its events.  Nothing is changed in response to events;
+//  HitBoxes are only changed by a script at fixed ticks, so the stream can be compared
+//  between Collider options, and with the stream of older versions of the Collider.
+//Only uses the API that the Collider has had from the start, apart from overrides of makeWall.
+class EventScene {
+	final static double DURATION = 8.0;
+	final static double TICK = .25;
+	private final static int NUM_MOVERS = 160, NUM_WALLS = 40;
+	//movers are in group 0 or in group 1, which does not interact with itself,
+	//  and walls are in group 2, which does not interact with itself either
+	final static int WALL_GROUP = 2;
+	private final static int[] GROUPS_0_1 = {0, 1};
+	private final static int[] GROUPS_0_2 = {0, 2};
+	private final static int[] GROUPS_0_1_2 = {0, 1, 2};
+
+	private Collider collider;
+	private final List<HBPositioned> movers = new ArrayList<HBPositioned>();
+	private final List<HitBox> walls = new ArrayList<HitBox>();
+	private double[] endTimes;
+
+	//the reference options, which the Collider has supported from the start
+	static ColliderOpts makeOpts() {
+		ColliderOpts opts = new ColliderOpts();
+		opts.cellWidth = 22.0;
+		opts.separateBuffer = .1;
+		opts.maxForesightTime = 1.5;
+		return opts;
+	}
+
+	//Runs the scene and returns one line per event, sorted by time and then by the
+	//  ids of the HitBoxes, so that simultaneous events may come in any order.
+	List<String> run(ColliderOpts opts) {
+		opts.interactTester = new InteractTester() {
+			@Override
+			public boolean canInteract(HitBox a, HitBox b) {
+				return a.getGroup() != b.getGroup() || a.getGroup() == 0;
+			}
+
+			@Override
+			public int[] getInteractGroups(HitBox hitBox) {
+				switch(hitBox.getGroup()) {
+				case 0: return GROUPS_0_1_2;
+				case 1: return GROUPS_0_2;
+				default: return GROUPS_0_1;
+				}
+			}
+		};
+		collider = new Collider(opts);
+		movers.clear();
+		walls.clear();
+		endTimes = new double[NUM_MOVERS];
+		Random random = new Random(11);
+		for(int i = 0; i < NUM_MOVERS; i++) makeMover(i, random);
+		for(int i = 0; i < NUM_WALLS; i++) {
+			double w = (i % 8 == 0) ? 250 + random.nextDouble()*150 : 5 + random.nextDouble()*40;
+			double h = 5 + random.nextDouble()*40;
+			HitBox wall = makeWall(collider, random.nextDouble()*1000, random.nextDouble()*700, w, h);
+			wall.setOwner(NUM_MOVERS + i);
+			walls.add(wall);
+		}
+
+		List<String> log = new ArrayList<String>();
+		Random script = new Random(12);
+		for(double time = TICK; time <= DURATION; time += TICK) {
+			while(true) {
+				ColliderEvent evt = collider.stepToTime(time);
+				if(evt == null) break;
+				int a = (Integer)evt.getFirst().getOwner(), b = (Integer)evt.getSecond().getOwner();
+				log.add(String.format(Locale.US, "%.5f %s %d %d", collider.getTime(),
+						evt.isCollision() ? "collide" : "separate", Math.min(a, b), Math.max(a, b)));
+			}
+			step(time, script);
+		}
+		collider = null;
+		Collections.sort(log);
+		return log;
+	}
+
+	HitBox makeWall(Collider collider, double x, double y, double w, double h) {
+		HBRect rect = collider.makeRect();
+		rect.setPos(x, y);
+		rect.setDims(w, h);
+		rect.setGroup(WALL_GROUP);
+		rect.commit(Double.POSITIVE_INFINITY);
+		return rect;
+	}
+
+	private void makeMover(int id, Random random) {
+		HBPositioned mover;
+		double x = random.nextDouble()*1000, y = random.nextDouble()*700;
+		if(id < 8) {
+			//wide rects that shrink out of the oversize lists
+			HBRect rect = collider.makeRect();
+			rect.setPos(x, y);
+			rect.setDims(200 + random.nextDouble()*100, 6 + random.nextDouble()*6);
+			rect.setVelDims(-50, 0);
+			endTimes[id] = 3.0;
+			mover = rect;
+		}
+		else if(random.nextBoolean()) {
+			HBRect rect = collider.makeRect();
+			rect.setPos(x, y);
+			rect.setDims(5 + random.nextDouble()*30, 5 + random.nextDouble()*30);
+			if(random.nextInt(4) == 0) rect.setVelDims(random.nextDouble()*6);
+			endTimes[id] = Double.POSITIVE_INFINITY;
+			mover = rect;
+		}
+		else {
+			HBCircle circ = collider.makeCircle();
+			circ.setPos(x, y);
+			circ.setDiam(5 + random.nextDouble()*30);
+			endTimes[id] = (random.nextInt(3) == 0) ? TICK*(1 + random.nextInt(20)) : Double.POSITIVE_INFINITY;
+			mover = circ;
+		}
+		mover.setVel(random.nextGaussian()*80, random.nextGaussian()*80);
+		mover.setGroup((id % 3 == 0) ? 1 : 0);
+		mover.setOwner(id);
+		mover.commit(endTimes[id]);
+		movers.add(mover);
+	}
+
+	//changes HitBoxes at the end of a tick, without regard to the events that occurred
+	private void step(double time, Random script) {
+		if(time == 2.0) {
+			for(int i = 0; i < walls.size(); i += 2) walls.get(i).free();
+		}
+		for(int i = 0; i < NUM_MOVERS; i++) {
+			HBPositioned mover = movers.get(i);
+			if(endTimes[i] == time) {
+				if(mover instanceof HBRect) ((HBRect)mover).setVelDims(0);
+				mover.setVel(script.nextGaussian()*80, script.nextGaussian()*80);
+				endTimes[i] = (script.nextBoolean()) ? time + TICK*(1 + script.nextInt(12))
+						: Double.POSITIVE_INFINITY;
+				mover.commit(endTimes[i]);
+			}
+			else if(script.nextInt(40) == 0) {
+				//turn back toward the middle of the scene
+				double dx = 500 - mover.getX(), dy = 350 - mover.getY();
+				double scale = 80/Math.max(1.0, Math.sqrt(dx*dx + dy*dy));
+				mover.setVel(dx*scale, dy*scale);
+				mover.commit(endTimes[i]);
+			}
+			else if(script.nextInt(60) == 0) {
+				mover.setGroup((mover.getGroup() >= 0) ? -1 : (i % 3 == 0) ? 1 : 0);
+				mover.commit(endTimes[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.matthewmichelotti.collider.ColliderOpts.BroadphaseType;
+import com.matthewmichelotti.collider.ColliderOpts.EventQueueType;
+
+//Compares the events of EventScene under each broadphase and option with the reference
+//  options, which in turn are compared with the events that the Collider found before
+//  it had event arrays, other broadphases, or ENTER events.
+public class EventStreamTest {
+	//size and hashCode of the EventScene log with the reference options, as found by the
+	//  Collider that re-queried every cell of a moving HitBox at each reiteration
+	private final static int OLD_NUM_EVENTS = 1321;
+	private final static int OLD_HASH = 1183731956;
+
+	private static List<String> reference;
+
+	//EventScene with walls made as static HitBoxes, which give the same events
+	private static class StaticScene extends EventScene {
+		@Override
+		HitBox makeWall(Collider collider, double x, double y, double w, double h) {
+			return collider.makeStaticRect(x, y, w, h, WALL_GROUP);
+		}
+	}
+
+	@Test
+	public void referenceMatchesOldCollider() {
+		List<String> log = getReference();
+		assertEquals(OLD_NUM_EVENTS, log.size());
+		assertEquals(OLD_HASH, log.hashCode());
+	}
+
+	@Test
+	public void grid() {
+		ColliderOpts opts = EventScene.makeOpts();
+		opts.gridLevels = 4;
+		check("gridLevels", opts);
+		opts = EventScene.makeOpts();
+		opts.gridLevels = 3;
+		opts.groupGridLevels = new int[] {-1, 0, 2};
+		check("groupGridLevels", opts);
+		opts = EventScene.makeOpts();
+		opts.gridMargin = 11.0;
+		check("gridMargin", opts);
+		opts = EventScene.makeOpts();
+		opts.oversizeCells = 4;
+		check("oversizeCells", opts);
+		opts = EventScene.makeOpts();
+		opts.adaptiveCellWidth = true;
+		opts.cellWidth = 3.0;
+		check("adaptiveCellWidth", opts);
+		opts = EventScene.makeOpts();
+		opts.worldMinX = 0;
+		opts.worldMinY = 0;
+		opts.worldMaxX = 1000;
+		opts.worldMaxY = 700;
+		check("world bounds", opts);
+		opts = EventScene.makeOpts();
+		opts.eventQueueType = EventQueueType.CALENDAR;
+		check("calendar queue", opts);
+		opts = EventScene.makeOpts();
+		opts.eventQuantum = 0.0;
+		check("eventQuantum 0", opts);
+	}
+
+	@Test
+	public void gridCellTraversal() {
+		ColliderOpts opts = EventScene.makeOpts();
+		opts.cellTraversal = true;
+		check("cellTraversal", opts);
+		opts.oversizeCells = 4;
+		check("cellTraversal, oversizeCells", opts);
+		opts = EventScene.makeOpts();
+		opts.cellTraversal = true;
+		opts.gridMargin = 11.0;
+		opts.gridLevels = 4;
+		check("cellTraversal, gridMargin, gridLevels", opts);
+		opts = EventScene.makeOpts();
+		opts.cellTraversal = true;
+		opts.adaptiveCellWidth = true;
+		opts.cellWidth = 3.0;
+		check("cellTraversal, adaptiveCellWidth", opts);
+	}
+
+	@Test
+	public void sweepAndPrune() {
+		ColliderOpts opts = EventScene.makeOpts();
+		opts.broadphaseType = BroadphaseType.SWEEP_AND_PRUNE;
+		check("sweep and prune", opts);
+		opts.cellTraversal = true;
+		check("sweep and prune, cellTraversal", opts);
+	}
+
+	@Test
+	public void tree() {
+		ColliderOpts opts = EventScene.makeOpts();
+		opts.broadphaseType = BroadphaseType.TREE;
+		check("tree", opts);
+		opts.cellTraversal = true;
+		check("tree, cellTraversal", opts);
+	}
+
+	@Test
+	public void staticHitBoxes() {
+		EventScene scene = new StaticScene();
+		check("static", scene, EventScene.makeOpts());
+		ColliderOpts opts = EventScene.makeOpts();
+		opts.cellTraversal = true;
+		opts.oversizeCells = 4;
+		opts.gridMargin = 11.0;
+		check("static, cellTraversal, oversizeCells, gridMargin", scene, opts);
+		opts = EventScene.makeOpts();
+		opts.broadphaseType = BroadphaseType.SWEEP_AND_PRUNE;
+		check("static, sweep and prune", scene, opts);
+		opts = EventScene.makeOpts();
+		opts.broadphaseType = BroadphaseType.TREE;
+		opts.cellTraversal = true;
+		check("static, tree, cellTraversal", scene, opts);
+	}
+
+	private static List<String> getReference() {
+		if(reference == null) reference = new EventScene().run(EventScene.makeOpts());
+		return reference;
+	}
+
+	private static void check(String name, ColliderOpts opts) {
+		check(name, new EventScene(), opts);
+	}
+
+	private static void check(String name, EventScene scene, ColliderOpts opts) {
+		assertEquals(name, getReference(), scene.run(opts));
+	}
+}
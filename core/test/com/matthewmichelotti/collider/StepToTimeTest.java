@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.matthewmichelotti.collider.util.ColliderListener;
+
+//Checks that stepping with a ColliderListener resolves the same events in the same order
+//  as calling stepToTime(double) until it returns null, when HitBoxes are changed and
+//  committed in response to each event.
+public class StepToTimeTest {
+	private final static double DURATION = 6.0;
+	private final static double TICK = .25;
+	private final static int NUM_HITBOXES = 120;
+	private final static int[] GROUPS = {0};
+
+	private enum Mode {CLASSIC, LISTENER, BUDGET}
+
+	@Test
+	public void listenerMatchesClassicLoop() {
+		List<String> expected = run(Mode.CLASSIC);
+		assertTrue(expected.size() > 200);
+		assertEquals(expected, run(Mode.LISTENER));
+	}
+
+	//a budget of a few events per call only splits the same stream between calls
+	@Test
+	public void budgetMatchesClassicLoop() {
+		assertEquals(run(Mode.CLASSIC), run(Mode.BUDGET));
+	}
+
+	private static List<String> run(Mode mode) {
+		ColliderOpts opts = new ColliderOpts();
+		opts.cellWidth = 22.0;
+		opts.separateBuffer = .1;
+		opts.maxForesightTime = 1.5;
+		opts.interactTester = new InteractTester() {
+			@Override public boolean canInteract(HitBox a, HitBox b) {return true;}
+			@Override public int[] getInteractGroups(HitBox hitBox) {return GROUPS;}
+		};
+		final Collider collider = new Collider(opts);
+		Random random = new Random(5);
+		for(int i = 0; i < NUM_HITBOXES; i++) {
+			HBPositioned hitBox;
+			if(random.nextBoolean()) {
+				HBRect rect = collider.makeRect();
+				rect.setDims(5 + random.nextDouble()*25, 5 + random.nextDouble()*25);
+				hitBox = rect;
+			}
+			else {
+				HBCircle circ = collider.makeCircle();
+				circ.setDiam(5 + random.nextDouble()*25);
+				hitBox = circ;
+			}
+			hitBox.setPos(random.nextDouble()*500, random.nextDouble()*400);
+			hitBox.setVel(random.nextGaussian()*60, random.nextGaussian()*60);
+			hitBox.setOwner(i);
+			hitBox.commit(Double.POSITIVE_INFINITY);
+		}
+
+		final List<String> log = new ArrayList<String>();
+		final Random reactions = new Random(6);
+		ColliderListener listener = new ColliderListener() {
+			@Override
+			public void collision(ColliderEvent evt) {
+				handle(collider, evt, log, reactions);
+			}
+
+			@Override
+			public void separation(ColliderEvent evt) {
+				handle(collider, evt, log, reactions);
+			}
+		};
+		for(double time = TICK; time <= DURATION; time += TICK) {
+			switch(mode) {
+			case CLASSIC:
+				while(true) {
+					ColliderEvent evt = collider.stepToTime(time);
+					if(evt == null) break;
+					handle(collider, evt, log, reactions);
+				}
+				break;
+			case LISTENER:
+				collider.stepToTime(time, listener);
+				break;
+			case BUDGET:
+				while(collider.stepToTime(time, listener, 3, Long.MAX_VALUE) < time) {}
+				break;
+			}
+		}
+		return log;
+	}
+
+	//logs the event without sorting, then turns the first HitBox around and shrinks
+	//  or grows the second, committing both
+	private static void handle(Collider collider, ColliderEvent evt, List<String> log, Random reactions) {
+		HBPositioned a = (HBPositioned)evt.getFirst(), b = (HBPositioned)evt.getSecond();
+		log.add(String.format(Locale.US, "%.5f %s %d %d", collider.getTime(),
+				evt.isCollision() ? "collide" : "separate", a.getOwner(), b.getOwner()));
+		if(evt.isCollision()) {
+			a.setVel(-a.getVelX() + reactions.nextGaussian()*10, -a.getVelY() + reactions.nextGaussian()*10);
+			a.commit(Double.POSITIVE_INFINITY);
+		}
+		if(b instanceof HBCircle) {
+			HBCircle circ = (HBCircle)b;
+			circ.setDiam(Math.max(4.0, circ.getDiam() + reactions.nextGaussian()*2));
+		}
+		else {
+			HBRect rect = (HBRect)b;
+			rect.setWidth(Math.max(4.0, rect.getWidth() + reactions.nextGaussian()*2));
+		}
+		b.commit(Double.POSITIVE_INFINITY);
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TileMapTest {
+	private final static int GROUP = 2;
+	private final static int[] GROUPS_0_2 = {0, 2};
+	private final static int[] GROUPS_0 = {0};
+
+	private static Collider makeCollider() {
+		ColliderOpts opts = new ColliderOpts();
+		opts.cellWidth = 20.0;
+		opts.separateBuffer = .1;
+		opts.maxForesightTime = 2.0;
+		opts.interactTester = new InteractTester() {
+			@Override public boolean canInteract(HitBox a, HitBox b) {
+				return a.getGroup() != b.getGroup();
+			}
+			@Override public int[] getInteractGroups(HitBox hitBox) {
+				return (hitBox.getGroup() == 0) ? GROUPS_0_2 : GROUPS_0;
+			}
+		};
+		return new Collider(opts);
+	}
+
+	//checks the rect at the given index, in tile units
+	private static void checkRect(TileMap map, int index, int col, int row, int numCols, int numRows,
+			int value)
+	{
+		assertEquals(col, map.getMinCol(index));
+		assertEquals(row, map.getMinRow(index));
+		assertEquals(numCols, map.getNumCols(index));
+		assertEquals(numRows, map.getNumRows(index));
+		assertEquals(value, map.getValue(index));
+		HBRect rect = map.getRect(index);
+		assertEquals(GROUP, rect.getGroup());
+		assertEquals(100 + (col + .5*numCols)*10, rect.getX(), 1e-9);
+		assertEquals(50 + (row + .5*numRows)*5, rect.getY(), 1e-9);
+		assertEquals(numCols*10, rect.getWidth(), 1e-9);
+		assertEquals(numRows*5, rect.getHeight(), 1e-9);
+		for(int c = col; c < col + numCols; c++) {
+			for(int r = row; r < row + numRows; r++) assertEquals(index, map.getRectIndex(c, r));
+		}
+	}
+
+	@Test
+	public void adjacentTilesMerge() {
+		int[][] tiles = {
+			{1, 1, 0},
+			{1, 1, 0},
+			{1, 1, 1},
+		};
+		TileMap map = makeCollider().loadTileMap(tiles, 100, 50, 10, 5, GROUP);
+		assertEquals(2, map.getNumRects());
+		checkRect(map, 0, 0, 0, 3, 2, 1);
+		checkRect(map, 1, 2, 2, 1, 1, 1);
+		assertEquals(-1, map.getRectIndex(0, 2));
+		assertEquals(-1, map.getRectIndex(3, 0));
+		assertEquals(-1, map.getRectIndex(0, -1));
+		assertEquals(0, map.getRectIndexAt(125, 55));
+		assertEquals(-1, map.getRectIndexAt(95, 55));
+	}
+
+	//tiles with different values are never merged, and missing tiles of short columns are empty
+	@Test
+	public void valuesAndShortColumns() {
+		int[][] tiles = {
+			{1, 2},
+			{1, 2, 3},
+			{1},
+		};
+		TileMap map = makeCollider().loadTileMap(tiles, 100, 50, 10, 5, GROUP);
+		assertEquals(3, map.getNumRects());
+		checkRect(map, 0, 0, 0, 3, 1, 1);
+		checkRect(map, 1, 0, 1, 2, 1, 2);
+		checkRect(map, 2, 1, 2, 1, 1, 3);
+		assertEquals(-1, map.getRectIndex(2, 1));
+		assertEquals(-1, map.getRectIndex(0, 2));
+	}
+
+	@Test
+	public void booleanTiles() {
+		boolean[][] tiles = {
+			{true, false},
+			{true, true},
+		};
+		TileMap map = makeCollider().loadTileMap(tiles, 100, 50, 10, 5, GROUP);
+		assertEquals(2, map.getNumRects());
+		checkRect(map, 0, 0, 0, 2, 1, 1);
+		checkRect(map, 1, 1, 1, 1, 1, 1);
+	}
+
+	@Test
+	public void emptyMap() {
+		Collider collider = makeCollider();
+		TileMap map = collider.loadTileMap(new int[0][], 100, 50, 10, 5, GROUP);
+		assertEquals(0, map.getNumRects());
+		assertEquals(-1, map.getRectIndex(0, 0));
+		map = collider.loadTileMap(new boolean[][] {{false, false}, {}}, 100, 50, 10, 5, GROUP);
+		assertEquals(0, map.getNumRects());
+		assertEquals(-1, map.getRectIndexAt(105, 52));
+		map.free();
+	}
+
+	//a HitBox sliding along a merged row of tiles collides once, without events at the seams
+	@Test
+	public void noEventsAtSeams() {
+		Collider collider = makeCollider();
+		TileMap map = collider.loadTileMap(new int[][] {{1}, {1}, {1}, {1}, {1}}, 100, 50, 10, 5, GROUP);
+		assertEquals(1, map.getNumRects());
+		HBRect mover = collider.makeRect();
+		mover.setPos(90, 57);
+		mover.setDims(6);
+		mover.setVel(20, 0);
+		mover.commit(Double.POSITIVE_INFINITY);
+		ColliderEvent evt = collider.stepToTime(10.0);
+		assertNotNull(evt);
+		assertTrue(evt.isCollision());
+		assertEquals(.35, collider.getTime(), 1e-9);
+		evt = collider.stepToTime(10.0);
+		assertNotNull(evt);
+		assertTrue(evt.isSeparation());
+		assertTrue(collider.getTime() > 3.0);
+		map.free();
+		assertNull(map.getRect(0));
+		assertNull(collider.stepToTime(10.0));
+	}
+}
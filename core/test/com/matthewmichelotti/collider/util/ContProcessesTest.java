@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.matthewmichelotti.collider.Collider;
+import com.matthewmichelotti.collider.ColliderEvent;
+import com.matthewmichelotti.collider.ColliderOpts;
+import com.matthewmichelotti.collider.HBCircle;
+import com.matthewmichelotti.collider.HitBox;
+import com.matthewmichelotti.collider.InteractTester;
+
+public class ContProcessesTest {
+	private final static int[] GROUPS = {0};
+	private final static int NUM_PAIRS = 20;
+
+	private int numCollisions = 0;
+	private Collider collider;
+	private boolean reenter = false;
+
+	//pairs of circles that all collide at time 1
+	private ColliderProcess makeProcess() {
+		ColliderOpts opts = new ColliderOpts();
+		opts.cellWidth = 20.0;
+		opts.separateBuffer = .1;
+		opts.maxForesightTime = 4.0;
+		opts.interactTester = new InteractTester() {
+			@Override public boolean canInteract(HitBox a, HitBox b) {return true;}
+			@Override public int[] getInteractGroups(HitBox hitBox) {return GROUPS;}
+		};
+		collider = new Collider(opts);
+		for(int i = 0; i < NUM_PAIRS; i++) {
+			HBCircle a = collider.makeCircle();
+			a.setPos(0, 100*i);
+			a.setDiam(10);
+			a.setVel(10, 0);
+			a.commit(Double.POSITIVE_INFINITY);
+			HBCircle b = collider.makeCircle();
+			b.setPos(30, 100*i);
+			b.setDiam(10);
+			b.setVel(-10, 0);
+			b.commit(Double.POSITIVE_INFINITY);
+		}
+		return new ColliderProcess(collider, new ColliderListener() {
+			@Override public void collision(ColliderEvent evt) {
+				numCollisions++;
+				//only processes HitBox changes, since events at the current time are not resolved
+				if(reenter) collider.stepToTime(collider.getTime(), false);
+			}
+			@Override public void separation(ColliderEvent evt) {}
+		});
+	}
+
+	//the budget applies to each Collider event, even when they all occur at the same time
+	@Test
+	public void budgetWithSimultaneousEvents() {
+		ContProcesses processes = new ContProcesses();
+		processes.addProcess(makeProcess());
+		assertEquals(1.0, processes.stepToTime(1.5, 3, Long.MAX_VALUE), 0.0);
+		assertEquals(3, numCollisions);
+		assertEquals(1.0, processes.stepToTime(1.5, 10, Long.MAX_VALUE), 0.0);
+		assertEquals(13, numCollisions);
+		processes.stepToTime(1.5);
+		assertEquals(1.5, processes.getTime(), 0.0);
+		assertEquals(NUM_PAIRS, numCollisions);
+	}
+
+	//at least one event is resolved per call, however small the time budget
+	@Test
+	public void timeBudgetStopsEarly() {
+		ContProcesses processes = new ContProcesses();
+		processes.addProcess(makeProcess());
+		for(int i = 1; i < NUM_PAIRS; i++) {
+			assertEquals(1.0, processes.stepToTime(1.5, Integer.MAX_VALUE, 1), 0.0);
+			assertEquals(i, numCollisions);
+		}
+		//nothing is left to resolve before the new time after the last collision
+		assertEquals(1.5, processes.stepToTime(1.5, Integer.MAX_VALUE, 1), 0.0);
+		assertEquals(NUM_PAIRS, numCollisions);
+	}
+
+	//the listener is given each event after the Collider has returned it
+	@Test
+	public void listenerCallsCollider() {
+		reenter = true;
+		ContProcesses processes = new ContProcesses();
+		processes.addProcess(makeProcess());
+		processes.stepToTime(1.5);
+		assertEquals(1.5, processes.getTime(), 0.0);
+		assertEquals(NUM_PAIRS, numCollisions);
+	}
+}
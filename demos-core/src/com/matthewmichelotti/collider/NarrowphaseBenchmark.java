@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider;
+
+import java.util.Random;
+
+/**
+ * Times testing one HitBox against a batch of candidates with
+ * CollisionTester.collideTimes, compared with calling CollisionTester.collideTime
+ * for each candidate, as the Collider did before CandidateBatch.
+ * This is in the package of the Collider in order to reach these package-private classes,
+ * but it is part of the demos rather than the library.
+ * Used by {@link com.matthewmichelotti.collider.demos.Benchmark}.
+ * @author Matthew Michelotti
+ */
+public final class NarrowphaseBenchmark {
+	private final static int NUM_CANDIDATES = 64;
+
+	private final String name;
+	private final boolean circles;
+	private final Collider collider;
+	private final CollisionTester tester;
+	private final HBPositioned source;
+	private final HitBox[] candidates = new HitBox[NUM_CANDIDATES];
+	private final CandidateBatch batch = new CandidateBatch();
+
+	private NarrowphaseBenchmark(String name, boolean circles) {
+		this.name = name;
+		this.circles = circles;
+		ColliderOpts opts = new ColliderOpts();
+		opts.cellWidth = 22.0;
+		opts.separateBuffer = .1;
+		opts.maxForesightTime = 2.0;
+		opts.interactTester = new InteractTester() {
+			@Override public boolean canInteract(HitBox a, HitBox b) {return false;}
+			@Override public int[] getInteractGroups(HitBox hitBox) {return null;}
+		};
+		collider = new Collider(opts);
+		tester = new CollisionTester(opts);
+		Random random = new Random(1);
+		source = make(0, 0, 0, 0, random);
+		//candidates around the source, about half of which reach it within maxForesightTime
+		for(int i = 0; i < NUM_CANDIDATES; i++) {
+			double angle = 2*Math.PI*i/NUM_CANDIDATES;
+			double dist = 40 + 40*random.nextDouble();
+			double speed = 40*random.nextDouble();
+			double x = dist*Math.cos(angle), y = dist*Math.sin(angle);
+			candidates[i] = make(x, y, -speed*Math.cos(angle + .3), -speed*Math.sin(angle + .3), random);
+		}
+		collider.stepToTime(0.0);
+	}
+
+	private HBPositioned make(double x, double y, double velX, double velY, Random random) {
+		HBPositioned hitBox;
+		if(circles) {
+			HBCircle circ = collider.makeCircle();
+			circ.setDiam(10 + 10*random.nextDouble());
+			hitBox = circ;
+		}
+		else {
+			HBRect rect = collider.makeRect();
+			rect.setDims(10 + 10*random.nextDouble(), 10 + 10*random.nextDouble());
+			hitBox = rect;
+		}
+		hitBox.setPos(x, y);
+		hitBox.setVel(velX, velY);
+		hitBox.commit(Double.POSITIVE_INFINITY);
+		return hitBox;
+	}
+
+	private double runBatch(int reps) {
+		double sum = 0.0;
+		for(int r = 0; r < reps; r++) {
+			batch.init(source);
+			for(HitBox b : candidates) batch.add(b);
+			tester.collideTimes(batch, 0.0);
+			for(int i = 0; i < batch.size; i++) {
+				if(batch.times[i] < Double.POSITIVE_INFINITY) sum += batch.times[i];
+			}
+			batch.clear();
+		}
+		return sum;
+	}
+
+	private double runPerPair(int reps) {
+		double sum = 0.0;
+		for(int r = 0; r < reps; r++) {
+			for(HitBox b : candidates) {
+				double t = tester.collideTime(source, b, 0.0);
+				if(t < Double.POSITIVE_INFINITY) sum += t;
+			}
+		}
+		return sum;
+	}
+
+	private void time(int reps) {
+		runBatch(reps/2); //warm up
+		runPerPair(reps/2);
+		long start = System.nanoTime();
+		double batchSum = runBatch(reps);
+		double batchMillis = (System.nanoTime() - start)*1e-6;
+		start = System.nanoTime();
+		double pairSum = runPerPair(reps);
+		double pairMillis = (System.nanoTime() - start)*1e-6;
+		if(batchSum != pairSum) throw new RuntimeException("collideTimes differs from collideTime");
+		System.out.printf("%-12s %-16s %9.1f ms %9.1f ms per pair (%.2fx)%n", "narrowphase", name,
+				batchMillis, pairMillis, pairMillis/batchMillis);
+	}
+
+	/**
+	 * Prints the times of testing one HitBox against 64 candidates a number of times,
+	 * with a batch and with a call per candidate, for rects and for circles.
+	 * @param reps Number of times that the candidates are tested.
+	 */
+	public static void run(int reps) {
+		new NarrowphaseBenchmark("64 rects", false).time(reps);
+		new NarrowphaseBenchmark("64 circles", true).time(reps);
+	}
+}
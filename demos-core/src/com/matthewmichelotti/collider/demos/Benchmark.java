@@ -0,0 +1,298 @@
+/*
+ * Copyright 2013-2014 Matthew D. Michelotti
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewmichelotti.collider.demos;
+
+import java.util.Random;
+
+import com.matthewmichelotti.collider.Collider;
+import com.matthewmichelotti.collider.ColliderEvent;
+import com.matthewmichelotti.collider.ColliderOpts;
+import com.matthewmichelotti.collider.ColliderOpts.BroadphaseType;
+import com.matthewmichelotti.collider.HBCircle;
+import com.matthewmichelotti.collider.HBPositioned;
+import com.matthewmichelotti.collider.HBRect;
+import com.matthewmichelotti.collider.HitBox;
+import com.matthewmichelotti.collider.HitBoxArrays;
+import com.matthewmichelotti.collider.InteractTester;
+import com.matthewmichelotti.collider.NarrowphaseBenchmark;
+import com.matthewmichelotti.collider.Normal;
+import com.matthewmichelotti.collider.util.ColliderListener;
+
+/**
+ * Times the Collider on simplified versions of the demo scenarios, without
+ * graphics or LibGDX, for each kind of broadphase.
+ * Before that, times the narrowphase test of one HitBox against a batch of candidates,
+ * compared with a call per candidate (see {@link NarrowphaseBenchmark}).
+ * Only needs the core classes on the classpath.
+ * The optional argument is the number of simulated seconds per run.
+ * @author Matthew Michelotti
+ */
+public class Benchmark {
+	private final static double STEP = 1.0/60;
+	private final static int W = 1280, H = 720;
+	private final static int[] GROUP_0 = {0};
+	private final static int[] GROUP_1 = {1};
+	private final static int[] GROUPS_0_2 = {0, 2};
+
+	public static void main(String[] args) {
+		double duration = (args.length > 0) ? Double.parseDouble(args[0]) : 20.0;
+		//first, so that the compiled narrowphase has not only seen circles
+		NarrowphaseBenchmark.run((int)(20000*duration));
+		Scenario[] scenarios = {new Danmaku(), new Pool(), new MixedSizes()};
+		String[] names = {"grid", "grid x4 levels", "adaptive grid", "grid margin", "cell traversal",
+				"sweep and prune", "tree"};
+		for(Scenario scenario : scenarios) {
+			for(int i = 0; i < names.length; i++) {
+				scenario.run(makeOpts(i), Math.min(duration, 2.0)); //warm up
+				long start = System.nanoTime();
+				int numEvents = scenario.run(makeOpts(i), duration);
+				double millis = (System.nanoTime() - start)*1e-6;
+				System.out.printf("%-12s %-16s %9.1f ms %9d events%n",
+						scenario.name, names[i], millis, numEvents);
+			}
+		}
+	}
+
+	private static ColliderOpts makeOpts(int config) {
+		ColliderOpts opts = new ColliderOpts();
+		opts.cellWidth = 22.0;
+		opts.separateBuffer = .1;
+		opts.maxForesightTime = 2.0;
+		switch(config) {
+		case 1: opts.gridLevels = 4; break;
+		case 2: opts.adaptiveCellWidth = true; break;
+		case 3: opts.gridMargin = 11.0; break;
+		case 4: opts.cellTraversal = true; break;
+		case 5: opts.broadphaseType = BroadphaseType.SWEEP_AND_PRUNE; break;
+		case 6: opts.broadphaseType = BroadphaseType.TREE; break;
+		default: break;
+		}
+		return opts;
+	}
+
+	private static abstract class Scenario implements InteractTester, ColliderListener {
+		final String name;
+		Collider collider;
+		Random random;
+		int numEvents;
+
+		Scenario(String name) {this.name = name;}
+
+		int run(ColliderOpts opts, double duration) {
+			opts.interactTester = this;
+			collider = new Collider(opts);
+			random = new Random(1);
+			numEvents = 0;
+			init();
+			for(double time = STEP; time <= duration; time += STEP) {
+				step(time);
+				collider.stepToTime(time, this);
+			}
+			collider = null;
+			return numEvents;
+		}
+
+		abstract void init();
+		void step(double time) {}
+		void onCollide(HitBox a, HitBox b) {}
+		void onSeparate(HitBox a, HitBox b) {}
+
+		@Override
+		public void collision(ColliderEvent evt) {
+			numEvents++;
+			onCollide(evt.getFirst(), evt.getSecond());
+		}
+
+		@Override
+		public void separation(ColliderEvent evt) {
+			numEvents++;
+			onSeparate(evt.getFirst(), evt.getSecond());
+		}
+
+		@Override public boolean canInteract(HitBox a, HitBox b) {return true;}
+
+		HBRect makeRect(double x, double y, double w, double h, int group) {
+			HBRect rect = collider.makeRect();
+			rect.setPos(x, y);
+			rect.setDims(w, h);
+			rect.setGroup(group);
+			rect.commit(Double.POSITIVE_INFINITY);
+			return rect;
+		}
+
+		HBCircle makeCircle(double x, double y, double diam, double speed, int group) {
+			HBCircle circ = collider.makeCircle();
+			circ.setPos(x, y);
+			circ.setDiam(diam);
+			double angle = 2*Math.PI*random.nextDouble();
+			circ.setVel(speed*Math.cos(angle), speed*Math.sin(angle));
+			circ.setGroup(group);
+			circ.commit(Double.POSITIVE_INFINITY);
+			return circ;
+		}
+
+		void makeWalls() {
+			collider.makeStaticRect(.5*W, 8, W, 16, 0);
+			collider.makeStaticRect(.5*W, H - 8, W, 16, 0);
+			collider.makeStaticRect(8, .5*H, 16, H, 0);
+			collider.makeStaticRect(W - 8, .5*H, 16, H, 0);
+		}
+
+		//reflects a circle off of a HitBox that does not move
+		void bounce(HitBox wall, HBPositioned circ) {
+			Normal n = wall.getNormal(circ);
+			double vn = circ.getVelX()*n.getUnitX() + circ.getVelY()*n.getUnitY();
+			if(vn >= 0.0) return;
+			circ.setVel(circ.getVelX() - 2*vn*n.getUnitX(), circ.getVelY() - 2*vn*n.getUnitY());
+			circ.commit(Double.POSITIVE_INFINITY);
+		}
+	}
+
+	//radial bullet patterns fired from three ships, as in the first danmaku demo;
+	//  group 0 is ships, group 1 is bullets, and group 2 is the screen bounds
+	private static class Danmaku extends Scenario {
+		private final static double[] SHIP_X = {640, 340, 940}, SHIP_Y = {650, 500, 500};
+		private HBRect bounds;
+		private double nextFire;
+		private double baseAngle;
+
+		Danmaku() {super("danmaku");}
+
+		@Override
+		void init() {
+			bounds = makeRect(.5*W, .5*H, W + 160, H + 160, 2);
+			for(int i = 0; i < SHIP_X.length; i++) makeCircle(SHIP_X[i], SHIP_Y[i], 25, 0, 0);
+			nextFire = 0.0;
+			baseAngle = .1;
+		}
+
+		@Override
+		void step(double time) {
+			if(time < nextFire) return;
+			nextFire += .9;
+			//all bullets of a volley are made at once
+			HitBoxArrays volley = new HitBoxArrays();
+			volley.count = 0;
+			int max = SHIP_X.length*170;
+			volley.circles = new boolean[max];
+			volley.x = new double[max];
+			volley.y = new double[max];
+			volley.velX = new double[max];
+			volley.velY = new double[max];
+			volley.widths = new double[max];
+			volley.groups = new int[max];
+			for(int s = 0; s < SHIP_X.length; s++) {
+				for(int i = 0; i < 170; i++) {
+					if(i % 10 < 6) continue;
+					double angle = baseAngle + 2*Math.PI*i/170.0;
+					double cos = Math.cos(angle), sin = Math.sin(angle);
+					//placed just clear of the ship, rather than touching it as in the demo,
+					//  so that whether they collide does not depend on rounding
+					int k = volley.count;
+					volley.circles[k] = true;
+					volley.x[k] = SHIP_X[s] + 18*cos;
+					volley.y[k] = SHIP_Y[s] + 18*sin;
+					volley.velX[k] = 100*cos;
+					volley.velY[k] = 100*sin;
+					volley.widths[k] = 10;
+					volley.groups[k] = 1;
+					volley.count++;
+				}
+			}
+			collider.makeHitBoxes(volley);
+			baseAngle = (baseAngle + .24) % (2*Math.PI);
+		}
+
+		@Override
+		void onCollide(HitBox a, HitBox b) {
+			if(a.getGroup() == 1 && b != bounds) a.free();
+			else if(b.getGroup() == 1 && a != bounds) b.free();
+		}
+
+		@Override
+		void onSeparate(HitBox a, HitBox b) {
+			if(a == bounds) b.free();
+			else if(b == bounds) a.free();
+		}
+
+		@Override
+		public int[] getInteractGroups(HitBox hitBox) {
+			return (hitBox.getGroup() == 1) ? GROUPS_0_2 : GROUP_1;
+		}
+	}
+
+	//elastic circles bouncing inside of walls, as in the pool demos
+	private static class Pool extends Scenario {
+		Pool() {super("pool");}
+
+		@Override
+		void init() {
+			makeWalls();
+			for(int i = 0; i < 600; i++) {
+				double x = 56 + random.nextDouble()*(W - 2*56);
+				double y = 56 + random.nextDouble()*(H - 2*56);
+				double diam = 1.15*(5 + Math.min(25, -Math.log(1.0 - random.nextDouble())*9));
+				makeCircle(x, y, diam, 250*random.nextDouble(), 0);
+			}
+		}
+
+		@Override
+		void onCollide(HitBox a, HitBox b) {
+			if(a instanceof HBRect) bounce(a, (HBPositioned)b);
+			else if(b instanceof HBRect) bounce(b, (HBPositioned)a);
+			else {
+				//equal masses exchange the components of their velocities along the normal
+				HBPositioned pa = (HBPositioned)a, pb = (HBPositioned)b;
+				Normal n = a.getNormal(b);
+				double dv = (pa.getVelX() - pb.getVelX())*n.getUnitX()
+						+ (pa.getVelY() - pb.getVelY())*n.getUnitY();
+				if(dv <= 0.0) return;
+				double dvx = dv*n.getUnitX(), dvy = dv*n.getUnitY();
+				pa.setVel(pa.getVelX() - dvx, pa.getVelY() - dvy);
+				pa.commit(Double.POSITIVE_INFINITY);
+				pb.setVel(pb.getVelX() + dvx, pb.getVelY() + dvy);
+				pb.commit(Double.POSITIVE_INFINITY);
+			}
+		}
+
+		@Override public int[] getInteractGroups(HitBox hitBox) {return GROUP_0;}
+	}
+
+	//slow circles with sizes spread over two orders of magnitude, passing through each other
+	private static class MixedSizes extends Scenario {
+		MixedSizes() {super("mixed sizes");}
+
+		@Override
+		void init() {
+			makeWalls();
+			for(int i = 0; i < 400; i++) {
+				double diam = 5*Math.exp(random.nextDouble()*Math.log(40));
+				double x = 16 + .5*diam + random.nextDouble()*(W - 32 - diam);
+				double y = 16 + .5*diam + random.nextDouble()*(H - 32 - diam);
+				makeCircle(x, y, diam, 30, 0);
+			}
+		}
+
+		@Override
+		void onCollide(HitBox a, HitBox b) {
+			if(a instanceof HBRect) bounce(a, (HBPositioned)b);
+			else if(b instanceof HBRect) bounce(b, (HBPositioned)a);
+		}
+
+		@Override public int[] getInteractGroups(HitBox hitBox) {return GROUP_0;}
+	}
+}
@@ -52,6 +52,10 @@ public class GameEngine {
 	public final static int SCREEN_WIDTH = 1280; //960
 	public final static int SCREEN_HEIGHT = 720;
 	
+	//bounds the simulation work per frame; if the simulation falls behind
+	//  during a burst of events, it catches up over the following frames
+	private final static long MAX_STEP_NANOS = 12000000L;
+	
 	public final static int GROUP_NORMAL = 0;
 	public final static int GROUP_BULLET = 1;
 
@@ -88,6 +92,10 @@ public class GameEngine {
 		opts.cellWidth = 22.0;
 		opts.separateBuffer = .1;
 		opts.maxForesightTime = 2.0;
+		opts.worldMinX = -CBounds.PAD;
+		opts.worldMinY = -CBounds.PAD;
+		opts.worldMaxX = SCREEN_WIDTH + CBounds.PAD;
+		opts.worldMaxY = SCREEN_HEIGHT + CBounds.PAD;
 		opts.interactTester = new CompInteractTester();
 		collider = new Collider(opts);
 		
@@ -144,7 +152,7 @@ public class GameEngine {
 			y = Math.max(0, Math.min(SCREEN_HEIGHT, y));
 			mouseListener.updateMousePos(time, x, y);
 		}
-		processes.stepToTime(time);
+		processes.stepToTime(time, Integer.MAX_VALUE, MAX_STEP_NANOS);
 		otherWork += (TimeUtils.nanoTime() - startNanoTime);
 	}
 	